@@ -0,0 +1,58 @@
+package com.notesplus;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-note work the editor does without Swing: splitting a note into rows
+ * (fences, tables and lists kept whole), preparing it for display as
+ * {@code setContent} does, and materializing the text as {@code getContent}
+ * does, over notes of 100 to 100k lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DocumentBenchmark {
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int lines;
+
+    private String markdown;
+    private LineDocument document;
+
+    @Setup
+    public void setUp() {
+        markdown = Corpus.markdown(lines);
+        document = MarkdownEditorPanel.prepareDocument(markdown).document;
+    }
+
+    @Benchmark
+    public List<String> splitLogicalRows() {
+        return LineDocument.splitLogicalRows(markdown);
+    }
+
+    @Benchmark
+    public MarkdownEditorPanel.OpenDocument prepareDocument() {
+        return MarkdownEditorPanel.prepareDocument(markdown);
+    }
+
+    @Benchmark
+    public String getContent() {
+        return document.toText();
+    }
+}
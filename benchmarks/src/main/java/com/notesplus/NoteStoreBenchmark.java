@@ -0,0 +1,128 @@
+package com.notesplus;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import burp.api.montoya.persistence.PersistedObject;
+
+/**
+ * Compares the note stores: filling them, reopening them (what extension
+ * startup pays), opening notes, and saving small edit batches.
+ *
+ * The project store runs over an in-memory stand-in for Burp's extension
+ * data, so its numbers are the store's own overhead; Burp adds the cost of
+ * writing its project file on top.
+ *
+ * Usage: NoteStoreBenchmark [notes] [kb per note]
+ */
+public final class NoteStoreBenchmark {
+
+    private static final int OPENED = 100;
+    private static final int SAVES = 200;
+
+    private NoteStoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int notes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int kb = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        String text = noteText(kb);
+
+        Path directory = Files.createTempDirectory("notes-store-bench");
+        PersistedObject project = memoryObject();
+        try {
+            System.out.printf("%-8s %12s %12s %12s %12s%n", "store", "fill ms", "reopen ms", "open us", "save us");
+            run("file", () -> new FileNoteStore(directory), notes, text);
+            run("project", () -> new ProjectNoteStore(project, NoteStoreBenchmark::memoryObject), notes, text);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String label, Supplier<NoteStore> open, int notes, String text) throws IOException {
+        long start = System.nanoTime();
+        try (NoteStore store = open.get()) {
+            for (int i = 0; i < notes; i++) {
+                String name = "note-" + i;
+                store.create(name);
+                store.appendText(name, text);
+            }
+        }
+        long fill = System.nanoTime() - start;
+
+        // What startup pays before the sidebar can be filled
+        start = System.nanoTime();
+        NoteStore store = open.get();
+        store.sortedNames();
+        long reopen = System.nanoTime() - start;
+
+        Random random = new Random(42);
+        start = System.nanoTime();
+        for (int i = 0; i < OPENED; i++) {
+            if (store.load("note-" + random.nextInt(notes)).isEmpty()) {
+                throw new IllegalStateException("empty note");
+            }
+        }
+        long opened = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < SAVES; i++) {
+            store.appendEdits("note-0", List.of(EditJournal.Entry.update(1, "edited " + i)), true);
+        }
+        store.close();
+        long saved = System.nanoTime() - start;
+
+        System.out.printf("%-8s %12.1f %12.1f %12.1f %12.1f%n", label, fill / 1e6, reopen / 1e6,
+                opened / 1e3 / OPENED, saved / 1e3 / SAVES);
+    }
+
+    private static String noteText(int kb) {
+        StringBuilder text = new StringBuilder("# Findings\n\n");
+        for (int i = 0; text.length() < kb * 1024; i++) {
+            text.append("- GET /api/v1/items?id=").append(i).append(" returns another user's data\n");
+        }
+        return text.toString();
+    }
+
+    /** A PersistedObject kept in maps, one per value type; enough for the note store. */
+    static PersistedObject memoryObject() {
+        Map<String, Map<String, Object>> byType = new ConcurrentHashMap<>();
+        return (PersistedObject) Proxy.newProxyInstance(PersistedObject.class.getClassLoader(),
+                new Class<?>[] { PersistedObject.class }, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.endsWith("Keys")) {
+                        String type = Character.toUpperCase(name.charAt(0)) + name.substring(1, name.length() - 4);
+                        return new HashSet<>(byType.getOrDefault(type, Map.of()).keySet());
+                    } else if (name.startsWith("get")) {
+                        return byType.getOrDefault(name.substring(3), Map.of()).get(args[0]);
+                    } else if (name.startsWith("set")) {
+                        byType.computeIfAbsent(name.substring(3), k -> new ConcurrentHashMap<>()).put((String) args[0], args[1]);
+                        return null;
+                    } else if (name.startsWith("delete")) {
+                        byType.getOrDefault(name.substring(6), new ConcurrentHashMap<>()).remove(args[0]);
+                        return null;
+                    } else if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (name.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (name.equals("toString")) {
+                        return "memoryObject" + new ArrayList<>(byType.keySet());
+                    }
+                    throw new UnsupportedOperationException(name);
+                });
+    }
+}
@@ -0,0 +1,84 @@
+package com.notesplus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and saving one note through the stores NotesPanel uses: the notes
+ * directory (journal appends, fsync, compaction) and the Burp project store
+ * over an in-memory stand-in for the extension data. A save is one typed-row
+ * update, waited on until it is stored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PersistenceBenchmark {
+
+    private static final String NOTE = "bench";
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int lines;
+
+    @Param({ "file", "project" })
+    public String store;
+
+    private Path directory;
+    private NoteStore notes;
+    private int edits;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (store.equals("file")) {
+            directory = Files.createTempDirectory("notes-jmh");
+            notes = new FileNoteStore(directory);
+        } else {
+            notes = new ProjectNoteStore(NoteStoreBenchmark.memoryObject(), NoteStoreBenchmark::memoryObject);
+        }
+        notes.create(NOTE);
+        notes.appendText(NOTE, Corpus.markdown(lines));
+        notes.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        notes.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public String load() throws IOException {
+        return notes.load(NOTE);
+    }
+
+    @Benchmark
+    public void saveEdit() {
+        notes.appendEdits(NOTE, List.of(EditJournal.Entry.update(2, "Edited paragraph " + edits++)), true);
+        notes.flush();
+    }
+}
@@ -0,0 +1,77 @@
+package com.notesplus;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-row rendering: markdown to HTML through flexmark, with and without the
+ * render cache, and the HTML into a row document with the shared stylesheet.
+ * Each invocation handles one row, cycling through a row of every kind.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    private String[] rows;
+    private String[] html;
+    private HTMLEditorKit kit;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        rows = Corpus.sampleRows();
+        html = new String[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            html[i] = MarkdownEditorPanel.renderMarkdownLineUncached(rows[i]);
+        }
+        kit = MarkdownStyles.newEditorKit();
+    }
+
+    private int nextRow() {
+        next = next + 1 == rows.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public String renderMarkdownLine() {
+        return MarkdownEditorPanel.renderMarkdownLineUncached(rows[nextRow()]);
+    }
+
+    @Benchmark
+    public String renderMarkdownLineCached() {
+        return MarkdownEditorPanel.renderMarkdownLine(rows[nextRow()]);
+    }
+
+    @Benchmark
+    public String buildFullHtml() {
+        return MarkdownEditorPanel.buildFullHtml(html[nextRow()]);
+    }
+
+    @Benchmark
+    public HTMLDocument parseRowDocument() throws Exception {
+        return MarkdownStyles.parseFragment(kit, MarkdownEditorPanel.buildFullHtml(html[nextRow()]));
+    }
+
+    @Benchmark
+    public StyledRow paintedRow() {
+        // What simple rows cost instead of the HTML path; cached by raw text like the renderer
+        return StyledRow.of(rows[nextRow()]);
+    }
+}
@@ -0,0 +1,134 @@
+package com.notesplus;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.swing.JComponent;
+import javax.swing.JEditorPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.html.HTMLEditorKit;
+
+/**
+ * Per-row heap and build time of a rendered row, comparing the old approach
+ * (full CSS inlined into every row and re-parsed into a private StyleSheet),
+ * the shared, preparsed MarkdownStyles sheet, and rows painted by StyledRowView.
+ *
+ * Usage: RowMemoryBenchmark [rows]
+ */
+public final class RowMemoryBenchmark {
+
+    private static final String[] BODIES = {
+            "<span style='display: inline-block; min-height: 1.2em;'>&nbsp;</span>",
+            "<h1>Engagement scope</h1>",
+            "<h2>Findings</h2>",
+            "Plain note text with <strong>bold</strong> and <code>inline code</code>",
+            "<ul>\n<li>GET /api/v1/users?id=1</li>\n</ul>",
+            "<hr />",
+            "<pre><code>POST /login HTTP/1.1\nHost: example.com\n</code></pre>",
+            "<a href=\"https://example.com\">https://example.com</a>",
+    };
+
+    // The same rows as markdown, for the painted variant
+    private static final String[] SOURCES = {
+            "",
+            "# Engagement scope",
+            "## Findings",
+            "Plain note text with **bold** and `inline code`",
+            "- GET /api/v1/users?id=1",
+            "---",
+            "- [x] Retest POST /login after the fix",
+            "https://example.com",
+    };
+
+    private RowMemoryBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        // Warm both paths so class loading and the shared sheet are not billed to the first run
+        measure("warmup", 200, RowMemoryBenchmark::legacyRow);
+        measure("warmup", 200, RowMemoryBenchmark::sharedRow);
+        measure("warmup", 200, RowMemoryBenchmark::paintedRow);
+
+        System.out.printf("%-22s %8s %14s %12s%n", "variant", "rows", "bytes/row", "us/row");
+        print(measure("per-row CSS (before)", rows, RowMemoryBenchmark::legacyRow));
+        print(measure("shared sheet", rows, RowMemoryBenchmark::sharedRow));
+        print(measure("painted row", rows, RowMemoryBenchmark::paintedRow));
+    }
+
+    private static JEditorPane legacyRow(int i) {
+        try {
+            JEditorPane pane = new JEditorPane();
+            pane.setContentType("text/html;charset=utf-8");
+            pane.read(new StringReader("<html><head><style>" + MarkdownStyles.CSS + "</style></head><body>"
+                    + BODIES[i % BODIES.length] + "</body></html>"), null);
+            return pane;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JEditorPane sharedRow(int i) {
+        try {
+            JEditorPane pane = new JEditorPane();
+            HTMLEditorKit kit = MarkdownStyles.newEditorKit();
+            pane.setEditorKit(kit);
+            pane.setDocument(MarkdownStyles.parseFragment(kit,
+                    "<html><body>" + BODIES[i % BODIES.length] + "</body></html>"));
+            return pane;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Laid out at a typical width so the cached text layouts are counted
+    private static StyledRowView paintedRow(int i) {
+        String raw = SOURCES[i % SOURCES.length];
+        StyledRow row = StyledRow.of(raw);
+        StyledRowView view = new StyledRowView();
+        view.setRow(row != null ? row : StyledRow.plain(raw));
+        view.preferredHeight(600);
+        return view;
+    }
+
+    private static Result measure(String name, int rows, IntFunction<? extends JComponent> factory) throws Exception {
+        List<JComponent> retained = new ArrayList<>(rows);
+        long before = usedHeap();
+        long[] elapsed = new long[1];
+        SwingUtilities.invokeAndWait(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                retained.add(factory.apply(i));
+            }
+            elapsed[0] = System.nanoTime() - start;
+        });
+        long after = usedHeap();
+        Result result = new Result(name, rows, (after - before) / rows, elapsed[0] / 1000.0 / rows);
+        retained.clear();
+        return result;
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void print(Result r) {
+        System.out.printf("%-22s %8d %14d %12.1f%n", r.name, r.rows, r.bytesPerRow, r.microsPerRow);
+    }
+
+    private record Result(String name, int rows, long bytesPerRow, double microsPerRow) {
+    }
+}
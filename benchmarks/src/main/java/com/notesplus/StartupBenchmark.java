@@ -0,0 +1,183 @@
+package com.notesplus;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+
+import burp.api.montoya.BurpExtension;
+import burp.api.montoya.MontoyaApi;
+
+/**
+ * Extension load time as Burp sees it: opens the shaded jar in its own class
+ * loader, as Burp does, and calls {@code initialize} with a stand-in API.
+ * Reports the time until the suite tab is registered and the notes are
+ * listed, how long opening the first note blocks the EDT when the user
+ * clicks it a moment later, and how many classes were loaded.
+ *
+ * Run it in a fresh JVM each time; class loading is the point.
+ * Usage: StartupBenchmark [jar] [notes] [pause before opening, ms]
+ */
+public final class StartupBenchmark {
+
+    private static final String NOTE = "# Findings\n\n| Host | Issue |\n|---|---|\n| api.example.com | IDOR |\n\n"
+            + "- [ ] Retest ~~/v1~~ /v2 after the fix\n- See https://example.com/ticket/1\n\n"
+            + "```http\nGET /api/v1/users?id=2 HTTP/1.1\nHost: api.example.com\n```\n";
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Path jar = Paths.get(args.length > 0 ? args[0] : "../target/burp-notes-plus-1.0-all.jar");
+        int notes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long pauseMillis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+        // A home directory of its own, so the extension finds these notes and not the real ones
+        Path home = Files.createTempDirectory("notes-startup-bench");
+        Path directory = Files.createDirectories(home.resolve(".burp_notes_plus"));
+        for (int i = 0; i < notes; i++) {
+            Files.writeString(directory.resolve(String.format("note-%04d.md", i)), NOTE, StandardCharsets.UTF_8);
+        }
+        System.setProperty("user.home", home.toString());
+        // Bring up the EDT and AWT first, as they already are in Burp
+        SwingUtilities.invokeAndWait(() -> new JList<String>());
+
+        ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+        int classesBefore = classes.getLoadedClassCount();
+        AtomicReference<Component> tab = new AtomicReference<>();
+        CountDownLatch registered = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        URLClassLoader loader = new ExtensionLoader(jar.toUri().toURL());
+        BurpExtension extension = (BurpExtension) loader.loadClass("com.notesplus.BurpNotesPlusExtension")
+                .getDeclaredConstructor().newInstance();
+        extension.initialize(api(tab, registered));
+        long initialized = System.nanoTime() - start;
+        if (!registered.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("tab was never registered");
+        }
+        long tabShown = System.nanoTime() - start;
+        int classesAtTab = classes.getLoadedClassCount();
+
+        // Open the first note a moment after it is listed, like a user clicking it
+        JList<?> list = find(tab.get(), JList.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (list.getModel().getSize() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long listed = System.nanoTime() - start;
+        Thread.sleep(pauseMillis);
+        long[] opened = new long[1];
+        SwingUtilities.invokeAndWait(() -> {
+            long t = System.nanoTime();
+            list.setSelectedIndex(0);
+            opened[0] = System.nanoTime() - t;
+        });
+        int classesAtOpen = classes.getLoadedClassCount();
+
+        System.out.printf("jar                 %10.1f KB%n", Files.size(jar) / 1024.0);
+        System.out.printf("initialize returns  %10.1f ms%n", initialized / 1e6);
+        System.out.printf("tab registered      %10.1f ms%n", tabShown / 1e6);
+        System.out.printf("notes listed        %10.1f ms%n", listed / 1e6);
+        System.out.printf("first note opened   %10.1f ms%n", opened[0] / 1e6);
+        System.out.printf("classes at tab      %10d%n", classesAtTab - classesBefore);
+        System.out.printf("classes at open     %10d%n", classesAtOpen - classesBefore);
+
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Like Burp's loader for an extension jar: the jar's own classes come from
+     * the jar even though the benchmark's classpath has them too; only the
+     * Montoya API is shared.
+     */
+    private static final class ExtensionLoader extends URLClassLoader {
+
+        ExtensionLoader(URL jar) {
+            super(new URL[] { jar }, StartupBenchmark.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("burp.api.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    try {
+                        loaded = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                return loaded;
+            }
+        }
+    }
+
+    /**
+     * Montoya API stand-in: every call returns another stand-in, or null for
+     * values, and registering a suite tab hands over its component.
+     */
+    private static MontoyaApi api(AtomicReference<Component> tab, CountDownLatch registered) {
+        return (MontoyaApi) stub(MontoyaApi.class, tab, registered);
+    }
+
+    private static Object stub(Class<?> type, AtomicReference<Component> tab, CountDownLatch registered) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getName().equals("registerSuiteTab")) {
+                tab.set((Component) args[1]);
+                registered.countDown();
+            }
+            if (method.getName().equals("extensionData")) {
+                return NoteStoreBenchmark.memoryObject();
+            }
+            Class<?> returned = method.getReturnType();
+            if (returned.isInterface()) {
+                return stub(returned, tab, registered);
+            } else if (returned == boolean.class) {
+                return false;
+            } else if (returned == int.class) {
+                return 0;
+            } else if (returned == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+    private static <T> T find(Component component, Class<T> type) {
+        if (type.isInstance(component)) {
+            return type.cast(component);
+        }
+        if (component instanceof Container container) {
+            for (Component child : container.getComponents()) {
+                T found = find(child, type);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+}
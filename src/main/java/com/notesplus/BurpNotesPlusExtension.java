@@ -15,6 +15,15 @@ public class BurpNotesPlusExtension implements BurpExtension {
         SwingUtilities.invokeLater(() -> {
             NotesPanel panel = new NotesPanel(api);
             api.userInterface().registerSuiteTab("Notes++", panel);
+            // The tab is up; load flexmark and the row renderers off the EDT before a note is opened
+            Thread warmUp = new Thread(MarkdownEditorPanel::warmUp, "notes-warmup");
+            warmUp.setDaemon(true);
+            warmUp.start();
+            // Both only queue captures; formatting and writing happen on the panel's capture worker
+            api.http().registerHttpHandler(panel.captureHandler());
+            api.userInterface().registerContextMenuItemsProvider(panel.captureMenu());
+            // Flush queued saves before Burp drops the extension
+            api.extension().registerUnloadingHandler(panel::shutdown);
         });
     }
 }
@@ -0,0 +1,80 @@
+package com.notesplus;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.ui.contextmenu.ContextMenuEvent;
+import burp.api.montoya.ui.contextmenu.ContextMenuItemsProvider;
+
+/**
+ * "Notes++" context menu on Burp's HTTP views: adds the selected requests and
+ * responses to the open note or to a chosen one, through the {@link CaptureQueue}.
+ */
+final class CaptureMenuProvider implements ContextMenuItemsProvider {
+
+    private final CaptureQueue queue;
+    private final Supplier<String> currentNote;
+    private final Supplier<List<String>> noteNames;
+    private final Component dialogParent;
+
+    CaptureMenuProvider(CaptureQueue queue, Supplier<String> currentNote, Supplier<List<String>> noteNames,
+            Component dialogParent) {
+        this.queue = queue;
+        this.currentNote = currentNote;
+        this.noteNames = noteNames;
+        this.dialogParent = dialogParent;
+    }
+
+    @Override
+    public List<Component> provideMenuItems(ContextMenuEvent event) {
+        List<HttpRequestResponse> selected = event.messageEditorRequestResponse()
+                .map(editor -> List.of(editor.requestResponse()))
+                .orElse(event.selectedRequestResponses());
+        if (selected.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String source = event.toolType().toolName();
+
+        JMenu menu = new JMenu("Notes++");
+        String current = currentNote.get();
+        if (current != null) {
+            JMenuItem toCurrent = new JMenuItem("Add to \"" + current + "\"");
+            toCurrent.addActionListener(e -> capture(current, source, selected));
+            menu.add(toCurrent);
+        }
+        JMenuItem toOther = new JMenuItem("Add to note...");
+        toOther.addActionListener(e -> {
+            List<String> names = noteNames.get();
+            if (names.isEmpty()) {
+                JOptionPane.showMessageDialog(dialogParent, "Create a note first", "Notes++",
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            Object note = JOptionPane.showInputDialog(dialogParent, "Note:", "Add to note",
+                    JOptionPane.PLAIN_MESSAGE, null, names.toArray(), current != null ? current : names.get(0));
+            if (note != null) {
+                capture((String) note, source, selected);
+            }
+        });
+        menu.add(toOther);
+
+        List<Component> items = new ArrayList<>();
+        items.add(menu);
+        return items;
+    }
+
+    private void capture(String note, String source, List<HttpRequestResponse> selected) {
+        long now = System.currentTimeMillis();
+        for (HttpRequestResponse item : selected) {
+            queue.offer(new HttpCapture(note, source, item.request(), item.hasResponse() ? item.response() : null, now));
+        }
+    }
+}
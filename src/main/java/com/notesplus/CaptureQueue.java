@@ -0,0 +1,144 @@
+package com.notesplus;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, batching queue between Burp's HTTP threads and the notes.
+ *
+ * {@link #offer} never blocks: when the queue is full, by count or by the
+ * bytes of the messages it holds, the capture is dropped and counted, and
+ * the count is written into the next batch. The byte limit matters because a
+ * capture holds Burp's whole request and response until it is formatted, so
+ * a burst of large downloads would otherwise pin them all in Burp's heap. A single worker
+ * waits a moment after the first capture so that a burst is grouped, formats
+ * the batch off the EDT, and hands each note all of its captures as one piece
+ * of markdown. However many requests arrive, a note sees a few appends per
+ * second.
+ */
+final class CaptureQueue implements AutoCloseable {
+
+    /** Receives one note's formatted captures; called on the capture worker. */
+    interface Sink {
+        void append(String note, String markdown);
+    }
+
+    private static final int CAPACITY = 4096;
+    private static final int MAX_BATCH = 512;
+    private static final long MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+    private static final long BATCH_WINDOW_MILLIS = 250;
+    // How often an idle worker checks whether the queue was closed
+    private static final long IDLE_POLL_MILLIS = 1000;
+
+    private final BlockingQueue<HttpCapture> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    // Message bytes held by queued captures and the batch being formatted
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Path spillDirectory;
+    private final Sink sink;
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    CaptureQueue(Path spillDirectory, Sink sink) {
+        this.spillDirectory = spillDirectory;
+        this.sink = sink;
+        this.worker = new Thread(this::run, "notes-capture");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Queues a capture; returns false, and counts it as dropped, if the queue is full or closed. */
+    boolean offer(HttpCapture capture) {
+        if (closed) {
+            return false;
+        }
+        long total = queuedBytes.addAndGet(capture.heldBytes);
+        // A capture over the limit on its own is still taken when nothing else is held
+        if ((total <= MAX_QUEUED_BYTES || total == capture.heldBytes) && queue.offer(capture)) {
+            return true;
+        }
+        queuedBytes.addAndGet(-capture.heldBytes);
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Stops the worker after it has delivered everything queued so far. The
+     * worker is not interrupted, so that last delivery can still write files.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<HttpCapture> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                HttpCapture first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                if (!closed && queue.size() < MAX_BATCH) {
+                    // Let a burst build up so it lands in the note as one change
+                    Thread.sleep(BATCH_WINDOW_MILLIS);
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+                deliver(batch);
+                for (HttpCapture capture : batch) {
+                    queuedBytes.addAndGet(-capture.heldBytes);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Nothing interrupts the worker; stop if something does
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(List<HttpCapture> batch) {
+        Map<String, StringBuilder> byNote = new LinkedHashMap<>();
+        for (HttpCapture capture : batch) {
+            try {
+                String markdown = capture.toMarkdown(spillDirectory, sequence.incrementAndGet());
+                StringBuilder text = byNote.computeIfAbsent(capture.note, k -> new StringBuilder());
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(markdown);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0 && !byNote.isEmpty()) {
+            byNote.values().iterator().next()
+                    .append("\n_").append(lost).append(" captures dropped: the capture queue was full._\n");
+        }
+        for (Map.Entry<String, StringBuilder> entry : byNote.entrySet()) {
+            try {
+                sink.append(entry.getKey(), entry.getValue().toString());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.notesplus;
+
+import burp.api.montoya.logging.Logging;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency of the editor's hot paths, so a sluggish Burp can be traced to
+ * Notes++ or ruled out. The histograms are recorded into from wherever the
+ * work happens; this class samples how late the EDT runs queued events,
+ * writes a summary to the extension's output every few minutes when the
+ * editor was used, and shows the numbers in a hidden window
+ * (Ctrl+Shift+D, Cmd+Shift+D on macOS).
+ */
+final class Diagnostics implements AutoCloseable {
+
+    /** From a key event in an edit field to that field's next paint. */
+    static final LatencyHistogram KEYSTROKE_TO_PAINT = new LatencyHistogram("keystroke-to-paint");
+    /** A row turning its raw text into what it shows ({@code updateRendered}). */
+    static final LatencyHistogram ROW_RENDER = new LatencyHistogram("row render");
+    /** Showing a whole note in the editor ({@code setContent}). */
+    static final LatencyHistogram NOTE_LOAD = new LatencyHistogram("note load");
+    /** How long an autosave holds up the EDT ({@code saveCurrentNote}). */
+    static final LatencyHistogram SAVE_EDT = new LatencyHistogram("save (EDT stall)");
+    /** From edits being queued for saving to their being stored. */
+    static final LatencyHistogram SAVE_WRITE = new LatencyHistogram("save (queued-stored)");
+    /** How late the EDT runs an event posted to it; sampled, whether or not the editor is in use. */
+    static final LatencyHistogram EDT_DELAY = new LatencyHistogram("EDT dispatch delay");
+
+    private static final LatencyHistogram[] EDITOR = { KEYSTROKE_TO_PAINT, ROW_RENDER, NOTE_LOAD, SAVE_EDT, SAVE_WRITE };
+    private static final LatencyHistogram[] ALL = { KEYSTROKE_TO_PAINT, ROW_RENDER, NOTE_LOAD, SAVE_EDT, SAVE_WRITE, EDT_DELAY };
+
+    private static final long PROBE_MILLIS = 100;
+    private static final long SUMMARY_MINUTES = 5;
+
+    private final Logging logging;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "notes-diagnostics");
+        t.setDaemon(true);
+        return t;
+    });
+    // One probe in flight at a time, so a stalled EDT is not flooded with them
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private LatencyHistogram.Snapshot[] lastSummary = snapshots();
+    private JDialog view;
+
+    Diagnostics(Logging logging) {
+        this.logging = logging;
+        scheduler.scheduleWithFixedDelay(this::probe, PROBE_MILLIS, PROBE_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::logSummary, SUMMARY_MINUTES, SUMMARY_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private void probe() {
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+        long posted = System.nanoTime();
+        SwingUtilities.invokeLater(() -> {
+            EDT_DELAY.recordSince(posted);
+            probing.set(false);
+        });
+    }
+
+    private void logSummary() {
+        LatencyHistogram.Snapshot[] now = snapshots();
+        LatencyHistogram.Snapshot[] interval = new LatencyHistogram.Snapshot[ALL.length];
+        long editorCount = 0;
+        for (int i = 0; i < ALL.length; i++) {
+            interval[i] = now[i].minus(lastSummary[i]);
+            if (i < EDITOR.length) {
+                editorCount += interval[i].count();
+            }
+        }
+        lastSummary = now;
+        // Nothing to say while the tab sits unused
+        if (editorCount > 0) {
+            logging.logToOutput("Notes++ latency, last " + SUMMARY_MINUTES + " minutes\n" + table(interval));
+        }
+    }
+
+    /** Everything recorded since the extension was loaded, as a table. */
+    static String report() {
+        return table(snapshots());
+    }
+
+    private static LatencyHistogram.Snapshot[] snapshots() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[ALL.length];
+        for (int i = 0; i < ALL.length; i++) {
+            snapshots[i] = ALL[i].snapshot();
+        }
+        return snapshots;
+    }
+
+    private static String table(LatencyHistogram.Snapshot[] snapshots) {
+        StringBuilder out = new StringBuilder(LatencyHistogram.Snapshot.header()).append('\n');
+        for (int i = 0; i < ALL.length; i++) {
+            out.append(snapshots[i].format(ALL[i].name())).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Opens the diagnostics window, or brings it to the front; refreshed every second while open. */
+    void showView(Component parent) {
+        if (view != null) {
+            view.toFront();
+            return;
+        }
+        JTextArea text = new JTextArea(report());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        Timer refresh = new Timer(1000, e -> text.setText(report()));
+
+        view = new JDialog(SwingUtilities.getWindowAncestor(parent), "Notes++ diagnostics", Dialog.ModalityType.MODELESS);
+        view.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        view.add(new JScrollPane(text));
+        view.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                refresh.stop();
+                view = null;
+            }
+        });
+        view.pack();
+        view.setLocationRelativeTo(parent);
+        refresh.start();
+        view.setVisible(true);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        SwingUtilities.invokeLater(() -> {
+            if (view != null) {
+                view.dispose();
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.notesplus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of recently shown notes as prepared editor documents. Confined to the EDT.
+ *
+ * Each entry remembers the note file's mtime when it was cached. The caller
+ * passes the current mtime on lookup, and an entry for a file that changed on
+ * disk is dropped. Entries are evicted least recently used first, once either
+ * the entry limit or the memory budget is exceeded.
+ */
+final class DocumentCache {
+
+    private static final class Slot {
+        final MarkdownEditorPanel.OpenDocument document;
+        final long modifiedMillis;
+        final long bytes;
+
+        Slot(MarkdownEditorPanel.OpenDocument document, long modifiedMillis) {
+            this.document = document;
+            this.modifiedMillis = modifiedMillis;
+            this.bytes = document.estimatedBytes();
+        }
+    }
+
+    private final LinkedHashMap<String, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+    private long bytes = 0;
+
+    DocumentCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached document, or null if there is none or the file has
+     * changed since. {@code ownWriteMillis} is the mtime of our own last write
+     * of the file, which already contained the cached rows and so does not
+     * make the entry stale.
+     */
+    MarkdownEditorPanel.OpenDocument get(String name, long modifiedMillis, long ownWriteMillis) {
+        Slot slot = slots.get(name);
+        if (slot == null) {
+            return null;
+        }
+        if (slot.modifiedMillis != modifiedMillis && ownWriteMillis != modifiedMillis) {
+            invalidate(name);
+            return null;
+        }
+        return slot.document;
+    }
+
+    boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    void put(String name, long modifiedMillis, MarkdownEditorPanel.OpenDocument document) {
+        invalidate(name);
+        Slot slot = new Slot(document, modifiedMillis);
+        if (slot.bytes > maxBytes) {
+            // Not worth evicting everything else for one huge note
+            return;
+        }
+        slots.put(name, slot);
+        bytes += slot.bytes;
+        Iterator<Map.Entry<String, Slot>> it = slots.entrySet().iterator();
+        while ((slots.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, Slot> eldest = it.next();
+            if (eldest.getKey().equals(name)) {
+                continue;
+            }
+            bytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    void invalidate(String name) {
+        Slot slot = slots.remove(name);
+        if (slot != null) {
+            bytes -= slot.bytes;
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    long sizeBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentCache[entries=" + slots.size() + ", bytes=" + bytes + "/" + maxBytes + "]";
+    }
+}
@@ -0,0 +1,245 @@
+package com.notesplus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of row-level edits kept beside a note as {@code .<note>.journal}.
+ *
+ * The header records the CRC and length of the markdown file the edits apply
+ * to. Every entry is framed with its own length and CRC, so a write torn by a
+ * crash only loses the entry being written. A journal whose base no longer
+ * matches the note (e.g. it was compacted just before a crash, or edited
+ * outside Burp) is never replayed.
+ */
+final class EditJournal {
+
+    private static final int MAGIC = 0x4E504A31; // "NPJ1"
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 8;
+
+    /** One applied document change, with the row texts needed to redo it. */
+    record Entry(LineDocument.ChangeType type, int index, int count, List<String> texts) {
+
+        static Entry update(int index, String text) {
+            return new Entry(LineDocument.ChangeType.UPDATE, index, 1, Collections.singletonList(text));
+        }
+
+        static Entry insert(int index, List<String> texts) {
+            return new Entry(LineDocument.ChangeType.INSERT, index, texts.size(), texts);
+        }
+
+        static Entry remove(int index, int count) {
+            return new Entry(LineDocument.ChangeType.REMOVE, index, count, Collections.emptyList());
+        }
+
+        static Entry reset(List<String> texts) {
+            return new Entry(LineDocument.ChangeType.RESET, 0, texts.size(), texts);
+        }
+    }
+
+    /** Journal entries plus the time the journal was started. */
+    record Contents(long createdAtMillis, List<Entry> entries) {
+    }
+
+    private EditJournal() {
+    }
+
+    static Path journalFor(Path noteFile) {
+        String name = noteFile.getFileName().toString().replaceAll("\\.md$", "");
+        return noteFile.resolveSibling("." + name + ".journal");
+    }
+
+    /**
+     * Appends entries to the note's journal and forces them to disk. A new
+     * journal is started with a header describing the current note file.
+     */
+    static void append(Path noteFile, List<Entry> entries) throws IOException {
+        Path journal = journalFor(noteFile);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        boolean fresh = !Files.exists(journal) || Files.size(journal) < HEADER_SIZE;
+        if (fresh) {
+            byte[] base = Files.exists(noteFile) ? Files.readAllBytes(noteFile) : new byte[0];
+            out.writeInt(MAGIC);
+            out.writeLong(crc(base));
+            out.writeLong(base.length);
+            out.writeLong(System.currentTimeMillis());
+        }
+        for (Entry entry : entries) {
+            byte[] payload = encode(entry);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc(payload));
+            out.write(payload);
+        }
+        out.flush();
+
+        StandardOpenOption mode = fresh ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, mode)) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            // Data only: the journal's metadata does not need to be durable for replay
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Reads the journal of a note, or returns null if there is none or it does
+     * not apply to {@code base}. A mismatched journal is set aside as
+     * {@code .orphan} rather than deleted, in case it holds edits worth recovering.
+     */
+    static Contents read(Path noteFile, byte[] base) throws IOException {
+        Path journal = journalFor(noteFile);
+        if (!Files.exists(journal)) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(journal);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < HEADER_SIZE || in.readInt() != MAGIC) {
+            Files.delete(journal);
+            return null;
+        }
+        long baseCrc = in.readLong();
+        long baseLength = in.readLong();
+        long createdAt = in.readLong();
+        if (baseCrc != crc(base) || baseLength != base.length) {
+            setAside(noteFile);
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        try {
+            while (true) {
+                int length = in.readInt();
+                int expectedCrc = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if ((int) crc(payload) != expectedCrc) {
+                    break;
+                }
+                entries.add(decode(payload));
+            }
+        } catch (EOFException e) {
+            // Torn tail from a crash mid-append; everything before it is intact
+        }
+        return new Contents(createdAt, entries);
+    }
+
+    /**
+     * Applies journal entries to the markdown they were recorded against.
+     * Returns null if an entry points outside the rows it would apply to,
+     * i.e. the entries were made against other rows than these.
+     */
+    static String replay(String markdown, List<Entry> entries) {
+        LineDocument document = new LineDocument();
+        document.reset(LineDocument.splitLogicalRows(markdown));
+        return replayInto(document, entries) ? document.toText() : null;
+    }
+
+    /** Applies entries to the document in order; stops and returns false at the first that does not fit. */
+    static boolean replayInto(LineDocument document, List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (!fits(document, entry)) {
+                return false;
+            }
+            apply(document, entry);
+        }
+        return true;
+    }
+
+    static boolean fits(LineDocument document, Entry entry) {
+        int size = document.size();
+        return switch (entry.type()) {
+            case INSERT -> entry.index() >= 0 && entry.index() <= size;
+            case REMOVE -> entry.index() >= 0 && entry.count() >= 0 && entry.index() + entry.count() <= size;
+            case UPDATE -> entry.index() >= 0 && entry.index() < size && entry.texts().size() == 1;
+            case RESET -> true;
+        };
+    }
+
+    static void apply(LineDocument document, Entry entry) {
+        switch (entry.type()) {
+            case INSERT -> document.insertAll(entry.index(), entry.texts());
+            case REMOVE -> document.removeRange(entry.index(), entry.count());
+            case UPDATE -> document.set(entry.index(), entry.texts().get(0));
+            case RESET -> document.reset(entry.texts());
+        }
+    }
+
+    /** Moves the note's journal out of the way as {@code .orphan}, keeping its edits for manual recovery. */
+    static void setAside(Path noteFile) throws IOException {
+        Path journal = journalFor(noteFile);
+        Files.move(journal, journal.resolveSibling(journal.getFileName() + ".orphan"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static void delete(Path noteFile) throws IOException {
+        Files.deleteIfExists(journalFor(noteFile));
+    }
+
+    static long size(Path noteFile) {
+        try {
+            return Files.size(journalFor(noteFile));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(entry.type().ordinal());
+        out.writeInt(entry.index());
+        out.writeInt(entry.count());
+        out.writeInt(entry.texts().size());
+        for (String text : entry.texts()) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        LineDocument.ChangeType type = LineDocument.ChangeType.values()[in.readByte()];
+        int index = in.readInt();
+        int count = in.readInt();
+        int textCount = in.readInt();
+        List<String> texts = new ArrayList<>(textCount);
+        for (int i = 0; i < textCount; i++) {
+            byte[] utf8 = new byte[in.readInt()];
+            in.readFully(utf8);
+            texts.add(new String(utf8, StandardCharsets.UTF_8));
+        }
+        return new Entry(type, index, count, texts);
+    }
+
+    static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
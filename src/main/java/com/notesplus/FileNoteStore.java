@@ -0,0 +1,164 @@
+package com.notesplus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notes as {@code <name>.md} files in one directory, shared by every Burp
+ * project. Saving goes through {@link NotePersistenceService}; the index is
+ * the {@link NoteCatalog}, which also picks up files changed outside Burp.
+ */
+final class FileNoteStore implements NoteStore {
+
+    private final Path directory;
+    private final NotePersistenceService persistence;
+    private final NoteCatalog catalog;
+
+    FileNoteStore(Path directory) {
+        this.directory = directory;
+        this.persistence = new NotePersistenceService(directory);
+        this.catalog = new NoteCatalog(directory);
+    }
+
+    @Override
+    public void addListener(NoteCatalog.Listener listener) {
+        catalog.addListener(listener);
+    }
+
+    @Override
+    public void start() {
+        catalog.start();
+    }
+
+    @Override
+    public List<String> sortedNames() {
+        return catalog.sortedNames();
+    }
+
+    @Override
+    public List<NoteCatalog.Entry> entries() {
+        return catalog.entries();
+    }
+
+    @Override
+    public long size(String name) {
+        try {
+            return Files.size(noteFile(name));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public long modifiedMillis(String name) {
+        try {
+            return Files.getLastModifiedTime(noteFile(name)).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long lastWrittenMillis(String name) {
+        return persistence.lastWrittenMillis(name);
+    }
+
+    @Override
+    public boolean create(String name) throws IOException {
+        try {
+            Files.write(noteFile(name), new byte[0], StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        catalog.refresh(name);
+        return true;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        persistence.discard(name);
+        Files.delete(noteFile(name));
+        catalog.refresh(name);
+    }
+
+    @Override
+    public String load(String name) throws IOException {
+        return persistence.load(name);
+    }
+
+    @Override
+    public BufferedReader read(String name) throws IOException {
+        return Files.newBufferedReader(noteFile(name), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Path streamableFile(String name) {
+        return persistence.streamableFile(name);
+    }
+
+    @Override
+    public void appendEdits(String name, List<EditJournal.Entry> edits, boolean settled) {
+        persistence.appendEdits(name, edits, settled);
+    }
+
+    @Override
+    public void appendText(String name, String text) {
+        persistence.appendText(name, text);
+    }
+
+    @Override
+    public byte[] readData(String key) throws IOException {
+        Path file = directory.resolve(key);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    @Override
+    public void writeData(String key, byte[] data) throws IOException {
+        NotePersistenceService.writeAtomically(directory.resolve(key), data);
+    }
+
+    @Override
+    public void appendData(String key, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(key), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(data);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void deleteData(String key) throws IOException {
+        Files.deleteIfExists(directory.resolve(key));
+    }
+
+    @Override
+    public void flush() {
+        try {
+            persistence.flush(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        persistence.close();
+        catalog.close();
+    }
+
+    private Path noteFile(String name) {
+        return directory.resolve(name + ".md");
+    }
+}
@@ -0,0 +1,163 @@
+package com.notesplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code #} headings of a note with the rows they are on, for the
+ * outline. Built once when a note is prepared, then kept up to date from
+ * the document's changes: an edited row is parsed again, and inserting or
+ * removing rows shifts only the headings after them, found by binary
+ * search. The document is never scanned again. EDT only once shown.
+ */
+final class HeadingIndex {
+
+    /** A heading and the row it is on; {@code row} moves as rows are inserted and removed above it. */
+    static final class Heading {
+        private int row;
+        private final int level;
+        private final String title;
+
+        Heading(int row, int level, String title) {
+            this.row = row;
+            this.level = level;
+            this.title = title;
+        }
+
+        int row() {
+            return row;
+        }
+
+        int level() {
+            return level;
+        }
+
+        String title() {
+            return title;
+        }
+    }
+
+    private final List<Heading> headings = new ArrayList<>();
+
+    HeadingIndex(LineDocument document) {
+        scan(document);
+    }
+
+    int size() {
+        return headings.size();
+    }
+
+    Heading get(int index) {
+        return headings.get(index);
+    }
+
+    /**
+     * Follows a change made to the document. Returns true if the headings
+     * themselves changed, as opposed to only moving.
+     */
+    boolean apply(LineDocument.Change change, LineDocument document) {
+        switch (change.type()) {
+            case UPDATE -> {
+                int at = firstAtOrAfter(change.index());
+                boolean existing = at < headings.size() && headings.get(at).row == change.index();
+                Heading parsed = parse(change.index(), document.get(change.index()));
+                if (existing && parsed != null) {
+                    Heading old = headings.get(at);
+                    if (old.level == parsed.level && old.title.equals(parsed.title)) {
+                        return false;
+                    }
+                    headings.set(at, parsed);
+                } else if (existing) {
+                    headings.remove(at);
+                } else if (parsed != null) {
+                    headings.add(at, parsed);
+                } else {
+                    return false;
+                }
+                return true;
+            }
+            case INSERT -> {
+                int at = firstAtOrAfter(change.index());
+                shift(at, change.count());
+                List<Heading> added = new ArrayList<>();
+                for (int i = change.index(); i < change.index() + change.count(); i++) {
+                    Heading heading = parse(i, document.get(i));
+                    if (heading != null) {
+                        added.add(heading);
+                    }
+                }
+                headings.addAll(at, added);
+                return !added.isEmpty();
+            }
+            case REMOVE -> {
+                int from = firstAtOrAfter(change.index());
+                int to = firstAtOrAfter(change.index() + change.count());
+                headings.subList(from, to).clear();
+                shift(from, -change.count());
+                return to > from;
+            }
+            default -> {
+                headings.clear();
+                scan(document);
+                return true;
+            }
+        }
+    }
+
+    /** Position of the first heading on or below {@code row}, or {@link #size} if there is none. */
+    int firstAtOrAfter(int row) {
+        int lo = 0;
+        int hi = headings.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (headings.get(mid).row < row) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void scan(LineDocument document) {
+        for (int i = 0; i < document.size(); i++) {
+            Heading heading = parse(i, document.get(i));
+            if (heading != null) {
+                headings.add(heading);
+            }
+        }
+    }
+
+    private void shift(int from, int delta) {
+        for (int i = from; i < headings.size(); i++) {
+            headings.get(i).row += delta;
+        }
+    }
+
+    /** An ATX heading (up to three spaces, one to six {@code #}, then a space or nothing), or null. */
+    static Heading parse(int row, String text) {
+        int start = 0;
+        while (start < 3 && start < text.length() && text.charAt(start) == ' ') {
+            start++;
+        }
+        int level = 0;
+        while (start + level < text.length() && text.charAt(start + level) == '#') {
+            level++;
+        }
+        int after = start + level;
+        if (level == 0 || level > 6 || (after < text.length() && text.charAt(after) != ' ' && text.charAt(after) != '\t')) {
+            return null;
+        }
+        int end = text.indexOf('\n', after);
+        String title = (end < 0 ? text.substring(after) : text.substring(after, end)).trim();
+        // An optional closing run of #s is not part of the title
+        int closing = title.length();
+        while (closing > 0 && title.charAt(closing - 1) == '#') {
+            closing--;
+        }
+        if (closing == 0 || title.charAt(closing - 1) == ' ') {
+            title = title.substring(0, closing).trim();
+        }
+        return new Heading(row, level, title);
+    }
+}
@@ -0,0 +1,183 @@
+package com.notesplus;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Browses the saved versions of the open note: lists them newest first,
+ * shows what the selected one changed or how it differs from the note now,
+ * and hands its text back to be restored.
+ */
+class HistoryDialog {
+
+    private static final String CHANGES = "Changes in this version";
+    private static final String AGAINST_CURRENT = "Differences from the note now";
+
+    private final NoteHistory history;
+    private final Supplier<List<String>> currentRows;
+    private final BiConsumer<String, String> onRestore;
+    private final DefaultListModel<NoteHistory.Version> model = new DefaultListModel<>();
+    private JDialog dialog;
+    private JList<NoteHistory.Version> versionList;
+    private JComboBox<String> compareBox;
+    private JTextArea diffArea;
+    private JButton restoreButton;
+    private String note;
+    // Results for an earlier selection or note are dropped
+    private int request = 0;
+
+    HistoryDialog(NoteHistory history, Supplier<List<String>> currentRows, BiConsumer<String, String> onRestore) {
+        this.history = history;
+        this.currentRows = currentRows;
+        this.onRestore = onRestore;
+    }
+
+    void show(Component owner, String note) {
+        if (dialog == null) {
+            createDialog(owner);
+        }
+        this.note = note;
+        dialog.setTitle("History: " + note);
+        reload();
+        dialog.setLocationRelativeTo(owner);
+        dialog.setVisible(true);
+    }
+
+    /** Closes the dialog if it shows the history of {@code note}, e.g. because the note was switched or deleted. */
+    void closeFor(String note) {
+        if (dialog != null && dialog.isVisible() && note.equals(this.note)) {
+            dialog.setVisible(false);
+        }
+    }
+
+    private void createDialog(Component owner) {
+        dialog = new JDialog(SwingUtilities.getWindowAncestor(owner), "History", Dialog.ModalityType.MODELESS);
+        dialog.setSize(860, 520);
+
+        versionList = new JList<>(model);
+        versionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        versionList.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        versionList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                NoteHistory.Version version = (NoteHistory.Version) value;
+                String text = format.format(new Date(version.timeMillis())) + "  (" + version.lines() + " lines)";
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        versionList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showDiff();
+            }
+        });
+
+        compareBox = new JComboBox<>(new String[] { CHANGES, AGAINST_CURRENT });
+        compareBox.addActionListener(e -> showDiff());
+
+        diffArea = new JTextArea();
+        diffArea.setEditable(false);
+        diffArea.setFont(new Font("Consolas", Font.PLAIN, 12));
+
+        JPanel diffPanel = new JPanel(new BorderLayout(0, 6));
+        diffPanel.add(compareBox, BorderLayout.NORTH);
+        diffPanel.add(new JScrollPane(diffArea), BorderLayout.CENTER);
+
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(versionList), diffPanel);
+        split.setDividerLocation(260);
+
+        restoreButton = new JButton("Restore this version");
+        restoreButton.setEnabled(false);
+        restoreButton.addActionListener(e -> restoreSelected());
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dialog.setVisible(false));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        buttons.add(restoreButton);
+        buttons.add(closeButton);
+
+        JPanel content = new JPanel(new BorderLayout(0, 8));
+        content.setBorder(new EmptyBorder(10, 10, 10, 10));
+        content.add(split, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        dialog.setContentPane(content);
+    }
+
+    private void reload() {
+        int current = ++request;
+        model.clear();
+        diffArea.setText("Loading...");
+        restoreButton.setEnabled(false);
+        history.versions(note, versions -> {
+            if (current != request) {
+                return;
+            }
+            if (versions == null) {
+                diffArea.setText("The history of this note could not be read.");
+                return;
+            }
+            if (versions.isEmpty()) {
+                diffArea.setText("No versions saved yet. A version is kept every few minutes while the note is edited.");
+                return;
+            }
+            for (int i = versions.size() - 1; i >= 0; i--) {
+                model.addElement(versions.get(i));
+            }
+            versionList.setSelectedIndex(0);
+        });
+    }
+
+    private void showDiff() {
+        NoteHistory.Version version = versionList.getSelectedValue();
+        restoreButton.setEnabled(version != null);
+        if (version == null) {
+            return;
+        }
+        int current = ++request;
+        List<String> against = AGAINST_CURRENT.equals(compareBox.getSelectedItem()) ? currentRows.get() : null;
+        diffArea.setText("Loading...");
+        history.diff(note, version.timeMillis(), against, diff -> {
+            if (current != request) {
+                return;
+            }
+            if (diff == null) {
+                diffArea.setText("This version could not be read or is no longer kept.");
+            } else {
+                diffArea.setText(diff.isEmpty() ? "(no differences)" : diff);
+            }
+            diffArea.setCaretPosition(0);
+        });
+    }
+
+    private void restoreSelected() {
+        NoteHistory.Version version = versionList.getSelectedValue();
+        if (version == null) {
+            return;
+        }
+        int result = JOptionPane.showConfirmDialog(dialog,
+                "Replace the note with this version? The note as it is now is kept in its history.",
+                "Restore", JOptionPane.YES_NO_OPTION);
+        if (result != JOptionPane.YES_OPTION) {
+            return;
+        }
+        String restoring = note;
+        int current = ++request;
+        history.text(restoring, version.timeMillis(), text -> {
+            if (current != request) {
+                return;
+            }
+            if (text == null) {
+                JOptionPane.showMessageDialog(dialog, "This version could not be read or is no longer kept.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            onRestore.accept(restoring, text);
+            reload();
+        });
+    }
+}
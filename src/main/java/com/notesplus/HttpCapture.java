@@ -0,0 +1,154 @@
+package com.notesplus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import burp.api.montoya.http.message.HttpMessage;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+/**
+ * One request and its response (if any) on their way into a note.
+ *
+ * Holds Burp's message objects as they were captured; the bytes are only
+ * read when {@link #toMarkdown} runs on the capture worker. Each message
+ * becomes a fenced {@code http} block. Bodies over {@link #INLINE_BODY_BYTES},
+ * and binary bodies, are cut from the note and the whole exchange is saved
+ * to a sidecar file instead.
+ */
+final class HttpCapture {
+
+    static final int INLINE_BODY_BYTES = 32 * 1024;
+    // Enough of a body to tell text from binary
+    private static final int SNIFF_BYTES = 1024;
+    private static final DateTimeFormatter SHOWN_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter FILE_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+    final String note;
+    final String source;
+    final HttpRequest request;
+    final HttpResponse response;
+    final long capturedMillis;
+    // Bytes of the messages held until the capture is formatted, for the queue's budget
+    final long heldBytes;
+
+    HttpCapture(String note, String source, HttpRequest request, HttpResponse response, long capturedMillis) {
+        this.note = note;
+        this.source = source;
+        this.request = request;
+        this.response = response;
+        this.capturedMillis = capturedMillis;
+        this.heldBytes = heldBytes(request) + (response == null ? 0 : heldBytes(response));
+    }
+
+    private static long heldBytes(HttpMessage message) {
+        return message.bodyOffset() + message.body().length();
+    }
+
+    /**
+     * Formats the exchange for the note. If a body had to be cut, the full
+     * exchange is written to {@code spillDirectory} and the note links to it.
+     */
+    String toMarkdown(Path spillDirectory, int sequence) {
+        byte[] requestBytes = request.toByteArray().getBytes();
+        byte[] responseBytes = response == null ? null : response.toByteArray().getBytes();
+
+        StringBuilder out = new StringBuilder();
+        out.append("### ").append(request.method()).append(' ').append(request.url());
+        if (response != null) {
+            out.append(" -> ").append(response.statusCode());
+        }
+        out.append('\n').append('_').append(source).append(", ")
+                .append(SHOWN_TIME.format(Instant.ofEpochMilli(capturedMillis))).append("_\n");
+
+        boolean cut = appendMessage(out, request, requestBytes);
+        if (response != null) {
+            cut |= appendMessage(out, response, responseBytes);
+        }
+        if (cut) {
+            String spilled = spill(spillDirectory, sequence, requestBytes, responseBytes);
+            out.append('\n').append(spilled == null
+                    ? "_Body shortened; the full exchange could not be saved._"
+                    : "_Body shortened; full exchange in `" + spilled + "`_").append('\n');
+        }
+        return out.toString();
+    }
+
+    // Returns true if the body did not fit in the note
+    private static boolean appendMessage(StringBuilder out, HttpMessage message, byte[] bytes) {
+        int bodyOffset = Math.min(message.bodyOffset(), bytes.length);
+        int bodyLength = bytes.length - bodyOffset;
+        boolean binary = isBinary(bytes, bodyOffset);
+        boolean cut = binary || bodyLength > INLINE_BODY_BYTES;
+
+        String text;
+        if (binary) {
+            text = decode(bytes, 0, bodyOffset) + "[" + bodyLength + " bytes of binary body]";
+        } else if (cut) {
+            text = decode(bytes, 0, bodyOffset + INLINE_BODY_BYTES)
+                    + "\n[" + (bodyLength - INLINE_BODY_BYTES) + " more bytes]";
+        } else {
+            text = decode(bytes, 0, bytes.length);
+        }
+        String fence = fenceFor(text);
+        out.append('\n').append(fence).append("http\n").append(text);
+        if (!text.endsWith("\n")) {
+            out.append('\n');
+        }
+        out.append(fence).append('\n');
+        return cut;
+    }
+
+    private static String decode(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8).replace("\r", "");
+    }
+
+    private static boolean isBinary(byte[] bytes, int bodyOffset) {
+        int end = Math.min(bytes.length, bodyOffset + SNIFF_BYTES);
+        for (int i = bodyOffset; i < end; i++) {
+            if (bytes[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A backtick fence longer than any backtick run in the text, so the text cannot close it
+    private static String fenceFor(String text) {
+        int longest = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            run = text.charAt(i) == '`' ? run + 1 : 0;
+            longest = Math.max(longest, run);
+        }
+        return "`".repeat(Math.max(3, longest + 1));
+    }
+
+    // Returns the file's path relative to the notes directory, or null if it could not be written
+    private String spill(Path spillDirectory, int sequence, byte[] requestBytes, byte[] responseBytes) {
+        String name = note.replaceAll("[^a-zA-Z0-9_\\-]", "_") + "-"
+                + FILE_TIME.format(Instant.ofEpochMilli(capturedMillis)) + "-" + sequence + ".http";
+        ByteArrayOutputStream exchange = new ByteArrayOutputStream();
+        exchange.writeBytes(requestBytes);
+        if (responseBytes != null) {
+            exchange.writeBytes("\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            exchange.writeBytes(responseBytes);
+        }
+        try {
+            Files.createDirectories(spillDirectory);
+            Files.write(spillDirectory.resolve(name), exchange.toByteArray());
+            return spillDirectory.getFileName() + "/" + name;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.notesplus;
+
+import java.util.regex.Pattern;
+
+import burp.api.montoya.http.handler.HttpHandler;
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.handler.HttpResponseReceived;
+import burp.api.montoya.http.handler.RequestToBeSentAction;
+import burp.api.montoya.http.handler.ResponseReceivedAction;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+/**
+ * Logs traffic that matches the current {@link Rule} into a note. Runs on
+ * Burp's HTTP threads, so it only tests the rule and offers the exchange to
+ * the {@link CaptureQueue}; nothing is copied, formatted or written here.
+ */
+final class HttpCaptureHandler implements HttpHandler {
+
+    /** Which responses to log and where; a null URL pattern matches every URL. */
+    record Rule(String note, Pattern urlPattern, boolean inScopeOnly) {
+
+        boolean matches(HttpRequest request) {
+            if (inScopeOnly && !request.isInScope()) {
+                return false;
+            }
+            return urlPattern == null || urlPattern.matcher(request.url()).find();
+        }
+    }
+
+    private final CaptureQueue queue;
+    private volatile Rule rule = null;
+
+    HttpCaptureHandler(CaptureQueue queue) {
+        this.queue = queue;
+    }
+
+    /** Starts logging with the given rule, or stops if it is null. */
+    void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    Rule rule() {
+        return rule;
+    }
+
+    @Override
+    public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent request) {
+        return RequestToBeSentAction.continueWith(request);
+    }
+
+    @Override
+    public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived response) {
+        Rule current = rule;
+        if (current != null) {
+            HttpRequest request = response.initiatingRequest();
+            if (current.matches(request)) {
+                queue.offer(new HttpCapture(current.note(), response.toolSource().toolType().toolName(),
+                        request, response, System.currentTimeMillis()));
+            }
+        }
+        return ResponseReceivedAction.continueWith(response);
+    }
+}
@@ -0,0 +1,136 @@
+package com.notesplus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in microseconds with log-linear buckets, as HdrHistogram
+ * lays them out: values below 64 us are exact, larger ones are kept to
+ * within 1/32 (about 3%). Recording only increments a preallocated counter,
+ * so it is cheap enough for the EDT's hot paths and safe from any thread.
+ * Values above about an hour land in the last bucket.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // Up to 2^32 us: every bucket group after the first adds 32 buckets
+    private static final int BUCKETS = SUB_BUCKETS + (32 - SUB_BUCKET_BITS) * HALF;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /** Records a duration in nanoseconds. */
+    void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos / 1000)));
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime} reading. */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+        int index = exponent * HALF + (int) (micros >>> exponent);
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /** Largest value in microseconds that falls into the bucket, so percentiles never read low. */
+    static long highestIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / HALF - 1;
+        long sub = index - exponent * HALF;
+        return ((sub + 1) << exponent) - 1;
+    }
+
+    /** Counts at one moment; two snapshots subtract to give an interval. */
+    static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        /** What was recorded since {@code earlier}. */
+        Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff);
+        }
+
+        long count() {
+            return total;
+        }
+
+        /** Value at the given percentile (0-100) in microseconds, or 0 if nothing was recorded. */
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestIn(i);
+                }
+            }
+            return highestIn(BUCKETS - 1);
+        }
+
+        long max() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return highestIn(i);
+                }
+            }
+            return 0;
+        }
+
+        /** One line: count, then p50/p90/p99/p99.9/max in milliseconds. */
+        String format(String name) {
+            return String.format("%-20s %8d %9s %9s %9s %9s %9s", name, total,
+                    millis(percentile(50)), millis(percentile(90)), millis(percentile(99)),
+                    millis(percentile(99.9)), millis(max()));
+        }
+
+        static String header() {
+            return String.format("%-20s %8s %9s %9s %9s %9s %9s", "(ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2f", micros / (double) TimeUnit.MILLISECONDS.toMicros(1));
+        }
+    }
+}
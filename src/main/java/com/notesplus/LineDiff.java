@@ -0,0 +1,189 @@
+package com.notesplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line diff (Myers' O(ND) algorithm) used for version history deltas and to
+ * show what a version changed. Common leading and trailing lines are
+ * trimmed first, so the usual small edit to a large note costs one pass of
+ * comparisons. Past {@link #MAX_EDIT_DISTANCE} differing lines the rest is
+ * reported as one replaced block: still a correct diff, just not a minimal one.
+ */
+final class LineDiff {
+
+    static final int MAX_EDIT_DISTANCE = 1000;
+
+    /** Lines {@code [oldStart, oldEnd)} of the old text became {@code [newStart, newEnd)} of the new one. */
+    record Hunk(int oldStart, int oldEnd, int newStart, int newEnd) {
+        int removed() {
+            return oldEnd - oldStart;
+        }
+
+        int added() {
+            return newEnd - newStart;
+        }
+    }
+
+    private LineDiff() {
+    }
+
+    /** Splits text into lines; a trailing newline gives a last, empty line, so joining restores the text. */
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', start)) {
+            lines.add(text.substring(start, i));
+            start = i + 1;
+        }
+        lines.add(text.substring(start));
+        return lines;
+    }
+
+    /** Changed blocks in order, with unchanged lines between them. */
+    static List<Hunk> diff(List<String> a, List<String> b) {
+        int start = 0;
+        int aEnd = a.size();
+        int bEnd = b.size();
+        while (start < aEnd && start < bEnd && a.get(start).equals(b.get(start))) {
+            start++;
+        }
+        while (aEnd > start && bEnd > start && a.get(aEnd - 1).equals(b.get(bEnd - 1))) {
+            aEnd--;
+            bEnd--;
+        }
+        if (start == aEnd && start == bEnd) {
+            return Collections.emptyList();
+        }
+        if (start == aEnd || start == bEnd) {
+            return List.of(new Hunk(start, aEnd, start, bEnd));
+        }
+        List<Hunk> hunks = myers(a, b, start, aEnd, start, bEnd);
+        return hunks != null ? hunks : List.of(new Hunk(start, aEnd, start, bEnd));
+    }
+
+    /**
+     * Greedy forward Myers over {@code a[aStart, aEnd)} and {@code b[bStart, bEnd)},
+     * keeping each round's furthest reaching paths to walk the edit script back.
+     * Returns null if the texts differ in more than {@link #MAX_EDIT_DISTANCE} lines.
+     */
+    private static List<Hunk> myers(List<String> a, List<String> b, int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a.get(aStart + x).equals(b.get(bStart + y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    return backtrack(trace, n, m, aStart, bStart);
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        return null;
+    }
+
+    // Round d of the trace holds diagonals -d..d
+    private static List<Hunk> backtrack(List<int[]> trace, int n, int m, int aStart, int bStart) {
+        List<Hunk> hunks = new ArrayList<>();
+        int x = n;
+        int y = m;
+        // The open hunk, extended backwards one removed or added line at a time
+        int hunkAEnd = -1;
+        int hunkBEnd = -1;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] previous = trace.get(d - 1);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && at(previous, d - 1, k - 1) < at(previous, d - 1, k + 1))) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = at(previous, d - 1, prevK);
+            int prevY = prevX - prevK;
+            // Diagonal (unchanged lines) back to the end of the edit
+            int editX = prevK == k + 1 ? prevX : prevX + 1;
+            int editY = prevK == k + 1 ? prevY + 1 : prevY;
+            if (x != editX || y != editY) {
+                if (hunkAEnd >= 0) {
+                    hunks.add(new Hunk(aStart + x, aStart + hunkAEnd, bStart + y, bStart + hunkBEnd));
+                }
+                hunkAEnd = editX;
+                hunkBEnd = editY;
+            } else if (hunkAEnd < 0) {
+                hunkAEnd = editX;
+                hunkBEnd = editY;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        if (hunkAEnd >= 0) {
+            hunks.add(new Hunk(aStart + x, aStart + hunkAEnd, bStart + y, bStart + hunkBEnd));
+        }
+        Collections.reverse(hunks);
+        return hunks;
+    }
+
+    private static int at(int[] round, int d, int k) {
+        return round[k + d];
+    }
+
+    /** The changes as unified diff text, with {@code context} unchanged lines around each block. */
+    static String unified(List<String> a, List<String> b, int context) {
+        List<Hunk> hunks = diff(a, b);
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < hunks.size()) {
+            // Blocks closer than twice the context share one section
+            int j = i;
+            while (j + 1 < hunks.size() && hunks.get(j + 1).oldStart() - hunks.get(j).oldEnd() <= 2 * context) {
+                j++;
+            }
+            Hunk first = hunks.get(i);
+            Hunk last = hunks.get(j);
+            int aFrom = Math.max(0, first.oldStart() - context);
+            int aTo = Math.min(a.size(), last.oldEnd() + context);
+            int bFrom = first.newStart() - (first.oldStart() - aFrom);
+            int bTo = last.newEnd() + (aTo - last.oldEnd());
+            out.append("@@ -").append(aFrom + 1).append(',').append(aTo - aFrom)
+                    .append(" +").append(bFrom + 1).append(',').append(bTo - bFrom).append(" @@\n");
+            int line = aFrom;
+            for (int h = i; h <= j; h++) {
+                Hunk hunk = hunks.get(h);
+                for (; line < hunk.oldStart(); line++) {
+                    out.append(' ').append(a.get(line)).append('\n');
+                }
+                for (int r = hunk.oldStart(); r < hunk.oldEnd(); r++) {
+                    out.append('-').append(a.get(r)).append('\n');
+                }
+                for (int r = hunk.newStart(); r < hunk.newEnd(); r++) {
+                    out.append('+').append(b.get(r)).append('\n');
+                }
+                line = hunk.oldEnd();
+            }
+            for (; line < aTo; line++) {
+                out.append(' ').append(a.get(line)).append('\n');
+            }
+            i = j + 1;
+        }
+        return out.toString();
+    }
+}
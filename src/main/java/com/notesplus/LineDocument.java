@@ -0,0 +1,328 @@
+package com.notesplus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The editor's text, held as logical rows (a table, list or code block is one row).
+ *
+ * Rows live in a rope-like list of bounded blocks so inserts and removals only
+ * shift one block, and a row is found by binary search over block start
+ * indices. Listeners receive line-level {@link Change}s rather than the text;
+ * the full string is only built when someone asks for it, e.g. to save.
+ */
+public class LineDocument {
+
+    /** Receives a change after it has been applied. Called on the thread that edited (the EDT). */
+    public interface Listener {
+        void documentChanged(Change change);
+    }
+
+    public enum ChangeType {
+        /** {@code count} rows were inserted starting at {@code index}. */
+        INSERT,
+        /** {@code count} rows starting at {@code index} were removed. */
+        REMOVE,
+        /** The text of row {@code index} was replaced. */
+        UPDATE,
+        /** The whole document was replaced, e.g. when a note is opened. */
+        RESET
+    }
+
+    /**
+     * A change as applied. {@code removed} holds the rows it took out: the
+     * old text for UPDATE, the removed rows for REMOVE, nothing otherwise.
+     */
+    public record Change(ChangeType type, int index, int count, List<String> removed) {
+
+        public Change(ChangeType type, int index, int count) {
+            this(type, index, count, Collections.emptyList());
+        }
+    }
+
+    private static final int MAX_BLOCK_SIZE = 512;
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int[] blockStarts = new int[16];
+    private boolean blockStartsDirty = true;
+    private int lineCount = 0;
+    private long charCount = 0;
+
+    /**
+     * Splits markdown into logical rows: one row per line, except that a
+     * multi-line block (table, list, block quote, code or HTML block) is kept
+     * as a single row. See {@link LogicalRowScanner}.
+     */
+    public static List<String> splitLogicalRows(String markdown) {
+        List<String> logicalLines = new ArrayList<>();
+        LogicalRowScanner scanner = new LogicalRowScanner(logicalLines::add);
+        if (markdown.isEmpty()) {
+            scanner.accept("");
+        } else {
+            int start = 0;
+            int newline;
+            while ((newline = markdown.indexOf('\n', start)) >= 0) {
+                scanner.accept(markdown.substring(start, newline));
+                start = newline + 1;
+            }
+            scanner.accept(markdown.substring(start));
+        }
+        scanner.finish();
+        return logicalLines;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int size() {
+        return lineCount;
+    }
+
+    public boolean isEmpty() {
+        return lineCount == 0;
+    }
+
+    /** Length of the joined text, including the newlines between rows. */
+    public long length() {
+        return lineCount == 0 ? 0 : charCount + lineCount - 1;
+    }
+
+    public String get(int index) {
+        checkIndex(index, lineCount);
+        int b = blockOf(index);
+        return blocks.get(b).lines.get(index - blockStarts[b]);
+    }
+
+    /** Replaces the text of a row. Fires UPDATE only if the text actually changed. */
+    public void set(int index, String text) {
+        checkIndex(index, lineCount);
+        int b = blockOf(index);
+        Block block = blocks.get(b);
+        String old = block.lines.set(index - blockStarts[b], text);
+        if (old.equals(text)) {
+            return;
+        }
+        block.chars += text.length() - old.length();
+        charCount += text.length() - old.length();
+        fire(new Change(ChangeType.UPDATE, index, 1, Collections.singletonList(old)));
+    }
+
+    public void insert(int index, String text) {
+        insertAll(index, Collections.singletonList(text));
+    }
+
+    public void add(String text) {
+        insert(lineCount, text);
+    }
+
+    /** Inserts rows as one change, so listeners see a single INSERT however many rows arrive. */
+    public void insertAll(int index, List<String> texts) {
+        checkIndex(index, lineCount + 1);
+        if (texts.isEmpty()) {
+            return;
+        }
+        int inserted = 0;
+        while (inserted < texts.size()) {
+            int at = index + inserted;
+            Block block;
+            int offset;
+            if (blocks.isEmpty()) {
+                block = new Block();
+                blocks.add(block);
+                blockStartsDirty = true;
+                offset = 0;
+            } else {
+                int b = insertionBlockOf(at);
+                if (blocks.get(b).lines.size() >= MAX_BLOCK_SIZE) {
+                    splitBlock(b);
+                    b = insertionBlockOf(at);
+                }
+                block = blocks.get(b);
+                offset = at - blockStarts[b];
+            }
+            int room = Math.max(1, MAX_BLOCK_SIZE - block.lines.size());
+            List<String> slice = texts.subList(inserted, Math.min(texts.size(), inserted + room));
+            block.lines.addAll(offset, slice);
+            for (String text : slice) {
+                block.chars += text.length();
+                charCount += text.length();
+            }
+            lineCount += slice.size();
+            inserted += slice.size();
+            blockStartsDirty = true;
+        }
+        fire(new Change(ChangeType.INSERT, index, texts.size()));
+    }
+
+    public void remove(int index) {
+        removeRange(index, 1);
+    }
+
+    /** Removes {@code count} rows starting at {@code index} as one change. */
+    public void removeRange(int index, int count) {
+        if (count <= 0) {
+            return;
+        }
+        checkIndex(index, lineCount);
+        checkIndex(index + count - 1, lineCount);
+        List<String> removed = new ArrayList<>(count);
+        int remaining = count;
+        while (remaining > 0) {
+            int b = blockOf(index);
+            Block block = blocks.get(b);
+            int offset = index - blockStarts[b];
+            int n = Math.min(remaining, block.lines.size() - offset);
+            List<String> range = block.lines.subList(offset, offset + n);
+            removed.addAll(range);
+            for (String text : range) {
+                block.chars -= text.length();
+                charCount -= text.length();
+            }
+            range.clear();
+            if (block.lines.isEmpty()) {
+                blocks.remove(b);
+            }
+            lineCount -= n;
+            remaining -= n;
+            blockStartsDirty = true;
+        }
+        fire(new Change(ChangeType.REMOVE, index, count, Collections.unmodifiableList(removed)));
+    }
+
+    /** Replaces the whole document and fires a single RESET. */
+    public void reset(List<String> texts) {
+        blocks.clear();
+        lineCount = 0;
+        charCount = 0;
+        for (int start = 0; start < texts.size(); start += MAX_BLOCK_SIZE) {
+            Block block = new Block();
+            block.lines.addAll(texts.subList(start, Math.min(texts.size(), start + MAX_BLOCK_SIZE)));
+            for (String text : block.lines) {
+                block.chars += text.length();
+            }
+            blocks.add(block);
+            lineCount += block.lines.size();
+            charCount += block.chars;
+        }
+        blockStartsDirty = true;
+        fire(new Change(ChangeType.RESET, 0, lineCount));
+    }
+
+    /** Immutable copy of the rows, safe to hand to background threads. */
+    public List<String> snapshot() {
+        List<String> copy = new ArrayList<>(lineCount);
+        for (Block block : blocks) {
+            copy.addAll(block.lines);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /** Writes the rows joined by newlines, without building an intermediate string. */
+    public void writeTo(Appendable out) throws IOException {
+        boolean first = true;
+        for (Block block : blocks) {
+            for (String line : block.lines) {
+                if (!first) {
+                    out.append('\n');
+                }
+                out.append(line);
+                first = false;
+            }
+        }
+    }
+
+    /** Materializes the full text. Only meant for saving, not for per-keystroke use. */
+    public String toText() {
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, length()));
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    private void fire(Change change) {
+        for (Listener listener : listeners) {
+            listener.documentChanged(change);
+        }
+    }
+
+    private void splitBlock(int b) {
+        Block block = blocks.get(b);
+        int half = block.lines.size() / 2;
+        Block tail = new Block();
+        List<String> moved = block.lines.subList(half, block.lines.size());
+        tail.lines.addAll(moved);
+        for (String text : moved) {
+            tail.chars += text.length();
+        }
+        block.chars -= tail.chars;
+        moved.clear();
+        blocks.add(b + 1, tail);
+        blockStartsDirty = true;
+    }
+
+    /** Index of the block holding row {@code index}; the row is at {@code index - blockStarts[b]}. */
+    private int blockOf(int index) {
+        rebuildBlockStarts();
+        int lo = 0;
+        int hi = blocks.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockStarts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Like {@link #blockOf} but also accepts {@code lineCount}, which appends to the last block. */
+    private int insertionBlockOf(int index) {
+        if (index == lineCount) {
+            rebuildBlockStarts();
+            return blocks.size() - 1;
+        }
+        return blockOf(index);
+    }
+
+    private void rebuildBlockStarts() {
+        if (!blockStartsDirty) {
+            return;
+        }
+        if (blockStarts.length < blocks.size() + 1) {
+            blockStarts = Arrays.copyOf(blockStarts, Math.max(blocks.size() + 1, blockStarts.length * 2));
+        }
+        int start = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            blockStarts[i] = start;
+            start += blocks.get(i).lines.size();
+        }
+        blockStarts[blocks.size()] = start;
+        blockStartsDirty = false;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Row " + index + " out of range [0, " + bound + ")");
+        }
+    }
+
+    private static final class Block {
+        final ArrayList<String> lines = new ArrayList<>();
+        long chars = 0;
+    }
+}
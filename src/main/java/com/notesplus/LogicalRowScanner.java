@@ -0,0 +1,398 @@
+package com.notesplus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.vladsch.flexmark.ast.BlockQuote;
+import com.vladsch.flexmark.ast.BulletList;
+import com.vladsch.flexmark.ast.FencedCodeBlock;
+import com.vladsch.flexmark.ast.HtmlBlock;
+import com.vladsch.flexmark.ast.HtmlBlockBase;
+import com.vladsch.flexmark.ast.IndentedCodeBlock;
+import com.vladsch.flexmark.ast.OrderedList;
+import com.vladsch.flexmark.ext.tables.TableBlock;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+
+/**
+ * Turns physical lines into the editor's logical rows, one line at a time.
+ *
+ * Lines are collected into chunks, and each chunk is parsed once with
+ * flexmark's block parser. Multi-line blocks (tables, lists, block quotes,
+ * fenced or indented code, HTML blocks) become one row each, mapped back to
+ * lines through the AST's source offsets. Every other line is its own row.
+ *
+ * A chunk is only cut at a block boundary: a blank line outside a fence or raw HTML block,
+ * followed by a line that cannot continue the block before it (see
+ * {@link #isBoundary}). No block spans such a boundary, so chunks parse
+ * independently and the rows do not depend on chunk size. That is what
+ * lets a file be split as it streams in, and lets the editor re-split only
+ * the rows between two boundaries after an edit.
+ *
+ * Most lines of tool output, logs or pasted code cannot start a multi-line
+ * block at all. After a boundary, such lines are emitted as rows directly and
+ * never reach flexmark, which is slow on very long paragraphs. Only the line
+ * before a block line is held back and parsed with it, since it may be a table
+ * header, together with the lines above it while those are setext underlines or
+ * reference definitions, which parse differently without their context.
+ */
+final class LogicalRowScanner {
+
+    // Keeps each flexmark call, and the lines held for it, bounded
+    private static final int CHUNK_CHARS = 64 * 1024;
+    private static final String[] RAW_HTML_TAGS = { "script", "pre", "style", "textarea" };
+
+    private final Consumer<String> sink;
+    private final List<String> lines = new ArrayList<>();
+    private int chunkChars = 0;
+    private char fenceChar = 0;
+    // Closing marker of an open HTML block that may contain blank lines (<script>, <!-- and so on), or null
+    private String htmlEnd = null;
+    private int fenceLength = 0;
+    private boolean previousBlank = false;
+    // True after a boundary until a block line arrives; lines are emitted without parsing
+    private boolean plain = true;
+    private final List<String> held = new ArrayList<>();
+
+    LogicalRowScanner(Consumer<String> sink) {
+        this.sink = sink;
+    }
+
+    void accept(String line) {
+        if (plain) {
+            if (!isBlockLine(line)) {
+                // Setext underlines and reference definitions depend on the line above them
+                if (!dependsOnPrevious(line)) {
+                    emitHeld();
+                }
+                held.add(line);
+                return;
+            }
+            plain = false;
+            for (String h : held) {
+                add(h);
+            }
+            held.clear();
+        } else if (!insideOpenBlock() && previousBlank && startsBlock(line)) {
+            boolean blockLine = isBlockLine(line);
+            if ((!blockLine || chunkChars >= CHUNK_CHARS) && flushChunk(false) && !blockLine) {
+                plain = true;
+                held.add(line);
+                return;
+            }
+        }
+        add(line);
+    }
+
+    /** Emits the rows of the last chunk. Call after the last line. */
+    void finish() {
+        flushChunk(true);
+        emitHeld();
+    }
+
+    private void add(String line) {
+        lines.add(line);
+        chunkChars += line.length() + 1;
+        track(line);
+        previousBlank = !insideOpenBlock() && line.isBlank();
+    }
+
+    private void emitHeld() {
+        for (String h : held) {
+            sink.accept(h);
+        }
+        held.clear();
+    }
+
+    /**
+     * True if rows may be split between {@code previousRow} and {@code nextRow}
+     * independently of each other: the first is blank and the second starts
+     * with a line that cannot be a list item, an indented continuation or
+     * lazy text of the block before.
+     */
+    static boolean isBoundary(String previousRow, String nextRow) {
+        if (!previousRow.isBlank()) {
+            return false;
+        }
+        int newline = nextRow.indexOf('\n');
+        return startsBlock(newline < 0 ? nextRow : nextRow.substring(0, newline));
+    }
+
+    /** True if the text ends inside a fenced code or raw HTML block that was never closed. */
+    static boolean endsInsideOpenBlock(List<String> rows) {
+        LogicalRowScanner probe = new LogicalRowScanner(row -> {
+        });
+        for (String row : rows) {
+            int start = 0;
+            int newline;
+            while ((newline = row.indexOf('\n', start)) >= 0) {
+                probe.track(row.substring(start, newline));
+                start = newline + 1;
+            }
+            probe.track(row.substring(start));
+        }
+        return probe.insideOpenBlock();
+    }
+
+    private static boolean startsBlock(String line) {
+        if (line.isEmpty() || Character.isWhitespace(line.charAt(0))) {
+            return false;
+        }
+        char c = line.charAt(0);
+        if ((c == '-' || c == '*' || c == '+') && (line.length() == 1 || line.charAt(1) == ' ' || line.charAt(1) == '\t')) {
+            return false;
+        }
+        int digits = 0;
+        while (digits < line.length() && digits < 10 && Character.isDigit(line.charAt(digits))) {
+            digits++;
+        }
+        if (digits > 0 && digits < line.length() && (line.charAt(digits) == '.' || line.charAt(digits) == ')')) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * True if the line could start or belong to a multi-line block: a quote,
+     * list item, fence, HTML block, indented code or table row. Errs on the
+     * side of true; a false positive only costs a parse.
+     */
+    private static boolean isBlockLine(String line) {
+        if (line.isBlank()) {
+            return false;
+        }
+        if (line.indexOf('|') >= 0) {
+            return true;
+        }
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        if (indent >= 4 || line.charAt(indent) == '\t') {
+            return true;
+        }
+        char c = line.charAt(indent);
+        if (c == '>' || c == '<' || line.startsWith("```", indent) || line.startsWith("~~~", indent)) {
+            return true;
+        }
+        int markerEnd = indent;
+        if (c == '-' || c == '*' || c == '+') {
+            markerEnd++;
+        } else {
+            while (markerEnd < line.length() && markerEnd - indent < 10 && Character.isDigit(line.charAt(markerEnd))) {
+                markerEnd++;
+            }
+            if (markerEnd == indent || markerEnd >= line.length()
+                    || (line.charAt(markerEnd) != '.' && line.charAt(markerEnd) != ')')) {
+                return false;
+            }
+            markerEnd++;
+        }
+        return markerEnd == line.length() || line.charAt(markerEnd) == ' ' || line.charAt(markerEnd) == '\t';
+    }
+
+    private boolean insideOpenBlock() {
+        return fenceChar != 0 || htmlEnd != null;
+    }
+
+    private void track(String line) {
+        if (htmlEnd != null) {
+            if (line.toLowerCase().contains(htmlEnd)) {
+                htmlEnd = null;
+            }
+        } else if (!trackFence(line) && fenceChar == 0) {
+            trackHtml(line);
+        }
+    }
+
+    // CommonMark HTML blocks 1-5 end at a marker rather than at a blank line
+    private void trackHtml(String line) {
+        int indent = 0;
+        while (indent < line.length() && indent < 4 && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        if (indent > 3 || !line.startsWith("<", indent)) {
+            return;
+        }
+        String rest = line.substring(indent).toLowerCase();
+        String end = null;
+        int from = 1;
+        for (String tag : RAW_HTML_TAGS) {
+            if (rest.startsWith("<" + tag) && (rest.length() == tag.length() + 1
+                    || " \t>".indexOf(rest.charAt(tag.length() + 1)) >= 0)) {
+                end = "</" + tag + ">";
+                break;
+            }
+        }
+        if (end == null) {
+            if (rest.startsWith("<!--")) {
+                end = "-->";
+                from = 4;
+            } else if (rest.startsWith("<?")) {
+                end = "?>";
+                from = 2;
+            } else if (rest.startsWith("<![cdata[")) {
+                end = "]]>";
+                from = 9;
+            } else if (rest.length() > 2 && rest.charAt(1) == '!' && Character.isLetter(rest.charAt(2))) {
+                end = ">";
+                from = 2;
+            } else {
+                return;
+            }
+        }
+        if (rest.indexOf(end, from) < 0) {
+            htmlEnd = end;
+        }
+    }
+
+    private static boolean dependsOnPrevious(String line) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty() || line.length() - line.stripLeading().length() > 3) {
+            return false;
+        }
+        char c = trimmed.charAt(0);
+        return c == '[' || ((c == '=' || c == '-') && trimmed.chars().allMatch(ch -> ch == c));
+    }
+
+    // CommonMark fences: up to 3 spaces, then 3+ backticks or tildes; closed by a longer-or-equal run of the same char.
+    // Returns true if the line opened or closed a fence.
+    private boolean trackFence(String line) {
+        int indent = 0;
+        while (indent < line.length() && indent < 4 && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        if (indent > 3 || indent >= line.length()) {
+            return false;
+        }
+        char c = line.charAt(indent);
+        if (c != '`' && c != '~') {
+            return false;
+        }
+        int run = indent;
+        while (run < line.length() && line.charAt(run) == c) {
+            run++;
+        }
+        int length = run - indent;
+        if (length < 3) {
+            return false;
+        }
+        if (fenceChar == 0) {
+            fenceChar = c;
+            fenceLength = length;
+            return true;
+        } else if (c == fenceChar && length >= fenceLength && line.substring(run).isBlank()) {
+            fenceChar = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses and emits the pending chunk. Unless {@code force} is set, the
+     * chunk is kept and false returned if the parse shows it ends inside a
+     * fence or raw HTML block that the line tracker missed; the tracker then
+     * takes over the parser's state.
+     */
+    private boolean flushChunk(boolean force) {
+        if (lines.isEmpty()) {
+            return true;
+        }
+        if (lines.size() == 1) {
+            sink.accept(lines.get(0));
+        } else if (!emitRows(force)) {
+            return false;
+        }
+        lines.clear();
+        chunkChars = 0;
+        return true;
+    }
+
+    private boolean emitRows(boolean force) {
+        int[] lineStarts = new int[lines.size()];
+        StringBuilder text = new StringBuilder(chunkChars);
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                text.append('\n');
+            }
+            lineStarts[i] = text.length();
+            text.append(lines.get(i));
+        }
+
+        Node document = Markdown.parser().parse(text.toString());
+        if (!force && endsInsideOpenBlock(document.getLastChild())) {
+            return false;
+        }
+        int next = 0;
+        for (Node block = document.getFirstChild(); block != null; block = block.getNext()) {
+            if (!isMultiLineBlock(block)) {
+                continue;
+            }
+            int first = lineOf(lineStarts, block.getStartOffset());
+            int last = lineOf(lineStarts, Math.max(block.getStartOffset(), block.getEndOffset() - 1));
+            // Blank lines trailing a list or quote stay separate rows
+            while (last > first && lines.get(last).isBlank()) {
+                last--;
+            }
+            if (first < next || first == last) {
+                continue;
+            }
+            while (next < first) {
+                sink.accept(lines.get(next++));
+            }
+            sink.accept(String.join("\n", lines.subList(first, last + 1)));
+            next = last + 1;
+        }
+        while (next < lines.size()) {
+            sink.accept(lines.get(next++));
+        }
+        return true;
+    }
+
+    // Adopts the state of an unclosed fence or raw HTML block at the end of the chunk
+    private boolean endsInsideOpenBlock(Node last) {
+        if (last instanceof FencedCodeBlock && ((FencedCodeBlock) last).getClosingMarker().isEmpty()) {
+            BasedSequence marker = ((FencedCodeBlock) last).getOpeningMarker();
+            fenceChar = marker.charAt(0);
+            fenceLength = marker.length();
+            return true;
+        }
+        if (last instanceof HtmlBlockBase) {
+            LogicalRowScanner probe = new LogicalRowScanner(row -> {
+            });
+            for (String line : last.getChars().toString().split("\n", -1)) {
+                probe.track(line);
+            }
+            if (probe.htmlEnd != null) {
+                htmlEnd = probe.htmlEnd;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMultiLineBlock(Node block) {
+        return block instanceof TableBlock
+                || block instanceof BulletList
+                || block instanceof OrderedList
+                || block instanceof BlockQuote
+                || block instanceof FencedCodeBlock
+                || block instanceof IndentedCodeBlock
+                || block instanceof HtmlBlock;
+    }
+
+    private static int lineOf(int[] lineStarts, int offset) {
+        int lo = 0;
+        int hi = lineStarts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,43 @@
+package com.notesplus;
+
+import java.util.Arrays;
+
+import com.vladsch.flexmark.ext.autolink.AutolinkExtension;
+import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
+import com.vladsch.flexmark.ext.gfm.tasklist.TaskListExtension;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.data.MutableDataSet;
+
+/**
+ * The flexmark parser and renderer shared by row splitting and rendering.
+ * Both are thread-safe and used from the EDT and the background threads.
+ */
+final class Markdown {
+
+    private static final Parser PARSER;
+    private static final HtmlRenderer RENDERER;
+
+    static {
+        MutableDataSet opts = new MutableDataSet();
+        opts.set(Parser.EXTENSIONS, Arrays.asList(
+                TablesExtension.create(),
+                StrikethroughExtension.create(),
+                TaskListExtension.create(),
+                AutolinkExtension.create()));
+        PARSER = Parser.builder(opts).build();
+        RENDERER = HtmlRenderer.builder(opts).build();
+    }
+
+    private Markdown() {
+    }
+
+    static Parser parser() {
+        return PARSER;
+    }
+
+    static HtmlRenderer renderer() {
+        return RENDERER;
+    }
+}
@@ -3,204 +3,941 @@ package com.notesplus;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 import javax.swing.BorderFactory;
-import javax.swing.Box;
-import javax.swing.BoxLayout;
 import javax.swing.JComponent;
 import javax.swing.JEditorPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
 import javax.swing.SwingUtilities;
+import javax.swing.TransferHandler;
 import javax.swing.border.EmptyBorder;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.html.HTMLEditorKit;
 
-import com.vladsch.flexmark.ext.autolink.AutolinkExtension;
-import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
-import com.vladsch.flexmark.ext.gfm.tasklist.TaskListExtension;
-import com.vladsch.flexmark.ext.tables.TablesExtension;
-import com.vladsch.flexmark.html.HtmlRenderer;
-import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Node;
-import com.vladsch.flexmark.util.data.MutableDataSet;
 
 public class MarkdownEditorPanel {
 
-    private final JPanel container;
-    private final JPanel linesPanel;
-    private final List<LineRow> rows = new ArrayList<>();
-    private final Consumer<String> onContentChanged;
-    private boolean updatingContent = false;
-
-    private static final Parser MD_PARSER;
-    private static final HtmlRenderer MD_RENDERER;
+    // Rows materialized above and below the viewport so short scrolls never show blanks
+    private static final int OVERSCAN_ROWS = 8;
+    private static final int MIN_ROW_HEIGHT = 28;
+    private static final int CODE_LINE_HEIGHT = 18;
+    private static final int TEXT_LINE_HEIGHT = 22;
+    // Edited rows are re-split this long after the last edit; rows a block boundary away are never touched
+    private static final int REPARSE_DELAY_MS = 250;
+    private static final int MAX_REPARSE_WIDEN = 512;
+    // Pastes with this many lines skip the edit field and go straight into rows
+    private static final int BULK_PASTE_LINES = 200;
+
+    private final JScrollPane scrollPane;
+    private final VirtualLinesPanel linesPanel;
+    private final LineDocument.Listener onContentChanged;
+    // Records undo steps, then reports the change on
+    private final LineDocument.Listener documentListener = this::documentChanged;
+    // Told when the headings of the note shown are added, removed or renamed, or another note is shown
+    private Runnable onOutlineChanged = () -> {};
+    // The note on screen; swapped as a whole when another note is shown
+    private OpenDocument current = new OpenDocument(new LineDocument(), new RowHeightIndex());
+    private LineDocument document = current.document;
+    private RowHeightIndex rowHeights = current.heights;
+    private final TreeMap<Integer, LineRow> liveRows = new TreeMap<>();
+    private final Deque<LineRow> rowPool = new ArrayDeque<>();
+    private LineRow editingRow = null;
+    // Bumped on every setContent so background work for a previous note is abandoned
+    private volatile long contentGeneration = 0;
+    // True while a streamed note is still arriving; rows cannot be edited until it is complete
+    private boolean loading = false;
+    // Row range edited since the last re-split, or -1
+    private int dirtyFrom = -1;
+    private int dirtyTo = -1;
+    private final javax.swing.Timer reparseTimer = new javax.swing.Timer(REPARSE_DELAY_MS, e -> reparseDirtyRows());
+    // Row changes only queue a layout pass; however many arrive in one EDT cycle, one pass measures them all
+    private boolean layoutScheduled = false;
+    private boolean inLayoutPass = false;
+    // Total row height the scroll extent was last laid out for
+    private int publishedHeight = -1;
+
+    // Shared by every row of every note, so reopening a note mostly skips flexmark
+    private static final RenderCache RENDER_CACHE = new RenderCache(16L * 1024 * 1024);
+    // Only rows StyledRow cannot paint are rendered to HTML, so only those are warmed
+    private static final RenderPipeline RENDER_PIPELINE = new RenderPipeline(MarkdownEditorPanel::renderMarkdownLine,
+            raw -> !StyledRow.isSimple(raw));
+
+    /**
+     * A note's rows with their measured heights, headings and last scroll
+     * position. Keeping one around lets the note be shown again without
+     * re-reading, re-splitting or re-measuring it.
+     */
+    static final class OpenDocument {
+        final LineDocument document;
+        final RowHeightIndex heights;
+        final HeadingIndex headings;
+        final UndoStack undo = new UndoStack();
+        int scrollY = 0;
+
+        OpenDocument(LineDocument document, RowHeightIndex heights) {
+            this.document = document;
+            this.heights = heights;
+            this.headings = new HeadingIndex(document);
+        }
 
-    static {
-        MutableDataSet opts = new MutableDataSet();
-        opts.set(Parser.EXTENSIONS, Arrays.asList(
-                TablesExtension.create(),
-                StrikethroughExtension.create(),
-                TaskListExtension.create(),
-                AutolinkExtension.create()));
-        MD_PARSER = Parser.builder(opts).build();
-        MD_RENDERER = HtmlRenderer.builder(opts).build();
+        /** Rough heap cost: the row strings plus per-row list, height and object overhead, and undo steps. */
+        long estimatedBytes() {
+            return document.length() * 2 + document.size() * 64L + undo.estimatedBytes();
+        }
     }
 
-    public MarkdownEditorPanel(Consumer<String> onContentChanged) {
+    public MarkdownEditorPanel(LineDocument.Listener onContentChanged) {
         this.onContentChanged = onContentChanged;
+        document.addListener(documentListener);
+        reparseTimer.setRepeats(false);
 
-        linesPanel = new JPanel();
-        linesPanel.setLayout(new BoxLayout(linesPanel, BoxLayout.Y_AXIS));
+        linesPanel = new VirtualLinesPanel();
         linesPanel.setBackground(Color.WHITE);
         linesPanel.setBorder(new EmptyBorder(16, 20, 16, 20));
 
         linesPanel.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                if (e.getClickCount() == 1 && e.getSource() == linesPanel) {
-                    if (rows.isEmpty()) {
+                if (e.getClickCount() == 1 && e.getSource() == linesPanel && !loading) {
+                    if (document.isEmpty()) {
                         addRow("", true);
                     } else {
-                        rows.get(rows.size() - 1).startEditing();
+                        editRow(document.size() - 1, -1);
                     }
                 }
             }
         });
 
-        container = new JPanel(new BorderLayout());
-        container.setBackground(Color.WHITE);
-        container.add(linesPanel, BorderLayout.NORTH);
-        container.add(Box.createVerticalGlue(), BorderLayout.CENTER);
+        scrollPane = new JScrollPane(linesPanel);
+        scrollPane.setBorder(null);
+        scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scrollPane.getViewport().setBackground(Color.WHITE);
+        // Re-materialize rows whenever the visible window moves or resizes
+        scrollPane.getViewport().addChangeListener(e -> layoutVisibleRows());
+
+        // Ctrl+Z undoes, Ctrl+Y or Ctrl+Shift+Z redoes (Cmd on macOS); the edit fields leave these keys alone
+        int shortcut = java.awt.GraphicsEnvironment.isHeadless()
+                ? InputEvent.CTRL_DOWN_MASK : java.awt.Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        javax.swing.InputMap keys = scrollPane.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+        keys.put(javax.swing.KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+        keys.put(javax.swing.KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+        keys.put(javax.swing.KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK), "redo");
+        scrollPane.getActionMap().put("undo", new javax.swing.AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                undo();
+            }
+        });
+        scrollPane.getActionMap().put("redo", new javax.swing.AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                redo();
+            }
+        });
 
         // Auto-create and focus first row when loaded
         SwingUtilities.invokeLater(this::requestFocus);
     }
 
+    private void documentChanged(LineDocument.Change change) {
+        current.undo.record(change, document);
+        if (current.headings.apply(change, document)) {
+            onOutlineChanged.run();
+        }
+        onContentChanged.documentChanged(change);
+    }
+
+    /** The headings of the note shown, kept up to date as it is edited. */
+    HeadingIndex headings() {
+        return current.headings;
+    }
+
+    void setOutlineListener(Runnable listener) {
+        this.onOutlineChanged = listener;
+    }
+
+    /**
+     * Scrolls so the row is at the top of the view, or as near as the end of
+     * the note allows. Its offset comes from the row height index, so this
+     * costs the same for the last row of a huge note as for the first.
+     */
+    void scrollToRow(int index) {
+        if (index < 0 || index >= document.size()) {
+            return;
+        }
+        JViewport viewport = scrollPane.getViewport();
+        Insets insets = linesPanel.getInsets();
+        int y = insets.top + rowHeights.offsetOf(index);
+        // The height the panel is being laid out to, which may not be published yet
+        int height = insets.top + rowHeights.totalHeight() + insets.bottom;
+        int max = Math.max(0, height - viewport.getExtentSize().height);
+        viewport.setViewPosition(new Point(0, Math.min(y, max)));
+    }
+
+    /** Reverts the latest edit step of the note shown and edits the row where it was. */
+    void undo() {
+        if (loading) {
+            return;
+        }
+        // The row being edited may hold keystrokes not in the document yet, and a re-split may be pending
+        commitEdits();
+        int row = current.undo.undo(this::replaceRows);
+        if (row >= 0 && !document.isEmpty()) {
+            editRow(Math.min(row, document.size() - 1), -1);
+        }
+    }
+
+    /** Re-applies the edit step undone last. */
+    void redo() {
+        if (loading) {
+            return;
+        }
+        commitEdits();
+        int row = current.undo.redo(this::replaceRows);
+        if (row >= 0 && !document.isEmpty()) {
+            editRow(Math.min(row, document.size() - 1), -1);
+        }
+    }
+
     public JComponent getComponent() {
-        return container;
+        return scrollPane;
     }
 
     public void requestFocus() {
         SwingUtilities.invokeLater(() -> {
-            if (rows.isEmpty()) {
+            if (loading) {
+                return;
+            }
+            if (document.isEmpty()) {
                 addRow("", true);
             } else {
-                rows.get(0).startEditing();
+                editRow(0, -1);
             }
         });
     }
 
     public void setContent(String markdown) {
-        updatingContent = true;
-        rows.clear();
-        linesPanel.removeAll();
-
-        List<String> logicalLines = new ArrayList<>();
-        String[] lines = markdown.isEmpty() ? new String[] { "" } : markdown.split("\n", -1);
-
-        StringBuilder codeBlock = null;
-        for (String line : lines) {
-            if (line.trim().startsWith("```")) {
-                if (codeBlock == null) {
-                    // Start code block
-                    codeBlock = new StringBuilder(line);
-                } else {
-                    // End code block
-                    codeBlock.append("\n").append(line);
-                    logicalLines.add(codeBlock.toString());
-                    codeBlock = null;
-                }
-            } else if (codeBlock != null) {
-                // Inside code block
-                codeBlock.append("\n").append(line);
-            } else {
-                // Regular line
-                logicalLines.add(line);
-            }
+        long start = System.nanoTime();
+        showDocument(prepareDocument(markdown));
+        Diagnostics.NOTE_LOAD.recordSince(start);
+    }
+
+    /**
+     * Splits markdown into rows with estimated heights. Touches no Swing state,
+     * so notes can be prepared on a background thread before they are shown.
+     */
+    static OpenDocument prepareDocument(String markdown) {
+        List<String> logicalLines = LineDocument.splitLogicalRows(markdown);
+        RowHeightIndex heights = new RowHeightIndex();
+        for (String logicalLine : logicalLines) {
+            heights.add(estimateHeight(logicalLine));
         }
+        LineDocument document = new LineDocument();
+        document.reset(logicalLines);
+        return new OpenDocument(document, heights);
+    }
 
-        // Handle unclosed code blocks
-        if (codeBlock != null) {
-            logicalLines.add(codeBlock.toString());
+    /**
+     * Shows an empty note to be filled by {@link #appendLoadedRows} as it is
+     * read. Returns the generation to pass along with each batch. Batches for
+     * a generation that has since been replaced are ignored.
+     */
+    long beginLoading() {
+        showDocument(new OpenDocument(new LineDocument(), new RowHeightIndex()));
+        loading = true;
+        return contentGeneration;
+    }
+
+    /**
+     * Appends rows read from disk. They are part of the note already, so they
+     * are not reported to the content listener as edits. Returns false once the
+     * load is stale and the reader should stop.
+     */
+    boolean appendLoadedRows(long generation, List<String> rows) {
+        if (generation != contentGeneration || !loading) {
+            return false;
+        }
+        for (String row : rows) {
+            rowHeights.add(estimateHeight(row));
+        }
+        int at = document.size();
+        document.removeListener(documentListener);
+        try {
+            document.insertAll(at, rows);
+        } finally {
+            document.addListener(documentListener);
         }
+        if (current.headings.apply(new LineDocument.Change(LineDocument.ChangeType.INSERT, at, rows.size()), document)) {
+            onOutlineChanged.run();
+        }
+        RENDER_PIPELINE.warm(rows, () -> contentGeneration != generation);
+        scheduleLayout();
+        return true;
+    }
 
-        for (String logicalLine : logicalLines) {
-            addRow(logicalLine, false);
+    /**
+     * Replaces every row of the note with {@code markdown}, split as
+     * setContent would split it. Unlike setContent this is an edit: it is
+     * reported as a removal and an insertion, so it is saved, followed by the
+     * outline and undone in one step like any other.
+     */
+    void replaceAll(String markdown) {
+        if (loading) {
+            return;
         }
+        commitEdits();
+        // Not merged into the edit that commitEdits may just have finished
+        current.undo.endStep();
+        replaceRows(0, document.size(), LineDocument.splitLogicalRows(markdown));
+    }
 
-        linesPanel.revalidate();
-        linesPanel.repaint();
-        updatingContent = false;
+    /**
+     * Adds text at the end of the note, split into rows as setContent would
+     * split it, as one change. A blank row keeps it apart from the last row.
+     */
+    void appendText(String markdown) {
+        if (loading) {
+            return;
+        }
+        List<String> rows = LineDocument.splitLogicalRows(markdown);
+        int at = document.size();
+        if (at > 0 && !document.get(at - 1).isBlank()) {
+            rows.add(0, "");
+        }
+        int[] heights = new int[rows.size()];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = estimateHeight(rows.get(i));
+        }
+        rowHeights.insertAll(at, heights);
+        document.insertAll(at, rows);
+        // An unclosed fence at the end of the note would take the new rows in
+        markDirty(at - 1, at);
+        long generation = contentGeneration;
+        RENDER_PIPELINE.warm(rows, () -> contentGeneration != generation);
+        scheduleLayout();
+    }
+
+    /** False once content other than that of {@code generation} has been shown; any thread. */
+    boolean isCurrent(long generation) {
+        return generation == contentGeneration;
     }
 
+    /**
+     * Shows a note prepared in the background for a load started with
+     * {@link #beginLoading}. Returns false, showing nothing, if that load has
+     * since been replaced.
+     */
+    boolean showLoaded(long generation, OpenDocument prepared) {
+        if (generation != contentGeneration || !loading) {
+            return false;
+        }
+        showDocument(prepared);
+        return true;
+    }
+
+    /** Ends a streamed load; the note becomes editable. */
+    void finishLoading(long generation) {
+        if (generation == contentGeneration) {
+            loading = false;
+        }
+    }
+
+    boolean isLoading() {
+        return loading;
+    }
+
+    /** The note currently shown, including its scroll position. */
+    OpenDocument currentDocument() {
+        current.scrollY = scrollPane.getViewport().getViewPosition().y;
+        return current;
+    }
+
+    /**
+     * Shows a prepared or previously shown note. Only the row components for
+     * the viewport are rebound; rows, heights and rendered HTML are reused.
+     */
+    void showDocument(OpenDocument next) {
+        loading = false;
+        dirtyFrom = -1;
+        dirtyTo = -1;
+        releaseAllRows();
+        current.scrollY = scrollPane.getViewport().getViewPosition().y;
+        document.removeListener(documentListener);
+
+        current = next;
+        document = next.document;
+        rowHeights = next.heights;
+        document.addListener(documentListener);
+        onOutlineChanged.run();
+
+        // Pre-render the whole note across cores so scrolling mostly hits the cache
+        long generation = ++contentGeneration;
+        RENDER_PIPELINE.warm(document.snapshot(), () -> contentGeneration != generation);
+
+        scheduleLayout();
+        int scrollY = next.scrollY;
+        scrollPane.getViewport().setViewPosition(new Point(0, 0));
+        if (scrollY > 0) {
+            // The new extent is only known once the layout pass queued above has run
+            SwingUtilities.invokeLater(() -> {
+                if (current == next) {
+                    scrollPane.getViewport().setViewPosition(new Point(0, scrollY));
+                }
+            });
+        }
+    }
+
+    /** Materializes the full note text. Edits are reported as line changes; avoid calling this per edit. */
     public String getContent() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < rows.size(); i++) {
-            sb.append(rows.get(i).getRawText());
-            if (i < rows.size() - 1) {
-                sb.append("\n");
+        flushEditingRow();
+        return document.toText();
+    }
+
+    /** Pushes the text of the row being edited into the document, which reports it if it changed. */
+    public void flushEditingRow() {
+        if (editingRow != null) {
+            editingRow.syncText();
+        }
+    }
+
+    public LineDocument getDocument() {
+        return document;
+    }
+
+    /** Scrolls to the row holding a 0-based physical line of the note and starts editing it. */
+    public void revealLine(int line) {
+        int remaining = line;
+        for (int i = 0; i < document.size(); i++) {
+            String text = document.get(i);
+            int spans = 1;
+            for (int c = 0; c < text.length(); c++) {
+                if (text.charAt(c) == '\n') {
+                    spans++;
+                }
+            }
+            if (remaining < spans) {
+                editRow(i, 0);
+                return;
             }
+            remaining -= spans;
         }
-        return sb.toString();
+        editRow(document.size() - 1, -1);
     }
 
-    private LineRow addRow(String rawText, boolean startEditing) {
-        LineRow row = new LineRow(rawText);
-        rows.add(row);
-        linesPanel.add(row.panel);
+    private void addRow(String rawText, boolean startEditing) {
+        rowHeights.add(estimateHeight(rawText));
+        document.add(rawText);
+        scheduleLayout();
         if (startEditing) {
-            SwingUtilities.invokeLater(row::startEditing);
+            int index = document.size() - 1;
+            SwingUtilities.invokeLater(() -> editRow(index, -1));
         }
-        return row;
     }
 
-    private LineRow insertRowAfter(int index, String rawText) {
-        LineRow row = new LineRow(rawText);
-        rows.add(index + 1, row);
-        linesPanel.add(row.panel, index + 1);
-        linesPanel.revalidate();
-        linesPanel.repaint();
-        return row;
+    private void insertRowAfter(int index, String rawText) {
+        rowHeights.insert(index + 1, estimateHeight(rawText));
+        shiftLiveRows(index + 1, 1);
+        shiftDirtyRows(index + 1, 1);
+        document.insert(index + 1, rawText);
+        markDirty(index, index + 1);
+        scheduleLayout();
     }
 
     private void removeRow(int index) {
-        if (rows.size() <= 1) {
+        if (document.size() <= 1) {
+            return;
+        }
+        LineRow row = liveRows.remove(index);
+        if (row != null) {
+            releaseRow(row);
+        }
+        rowHeights.remove(index);
+        shiftLiveRows(index + 1, -1);
+        shiftDirtyRows(index + 1, -1);
+        document.remove(index);
+        markDirty(index - 1, index);
+        scheduleLayout();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Viewport virtualization
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Queues one layout pass for the end of this EDT cycle. Rows changed during a pass are measured by it. */
+    private void scheduleLayout() {
+        if (layoutScheduled || inLayoutPass) {
+            return;
+        }
+        layoutScheduled = true;
+        SwingUtilities.invokeLater(this::runScheduledLayout);
+    }
+
+    private void runScheduledLayout() {
+        layoutScheduled = false;
+        if (rowHeights.totalHeight() != publishedHeight) {
+            // Validated right away, so work queued behind this pass already sees the new scroll extent
+            linesPanel.invalidate();
+            scrollPane.validate();
+        } else {
+            layoutVisibleRows();
+        }
+    }
+
+    /**
+     * Binds row components to the rows intersecting the viewport (plus overscan),
+     * returns the rest to the pool and positions everything from the height index.
+     */
+    private void layoutVisibleRows() {
+        Insets insets = linesPanel.getInsets();
+        int width = linesPanel.getWidth() - insets.left - insets.right;
+        if (width <= 0 || document.isEmpty()) {
             return;
         }
-        LineRow row = rows.remove(index);
-        linesPanel.remove(row.panel);
-        linesPanel.revalidate();
+        inLayoutPass = true;
+        try {
+            layoutRows(insets, width);
+        } finally {
+            inLayoutPass = false;
+        }
+    }
+
+    private void layoutRows(Insets insets, int width) {
+
+        Rectangle visible = linesPanel.getVisibleRect();
+        int first = Math.max(0, rowHeights.indexAt(visible.y - insets.top) - OVERSCAN_ROWS);
+        int last = Math.min(document.size() - 1,
+                rowHeights.indexAt(visible.y + visible.height - insets.top) + OVERSCAN_ROWS);
+
+        Iterator<Map.Entry<Integer, LineRow>> it = liveRows.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, LineRow> entry = it.next();
+            int index = entry.getKey();
+            // The row being edited stays pinned so it keeps focus and caret while off-screen
+            if ((index < first || index > last) && entry.getValue() != editingRow) {
+                releaseRow(entry.getValue());
+                it.remove();
+            }
+        }
+        for (int i = first; i <= last; i++) {
+            materializeRow(i);
+        }
+
+        for (Map.Entry<Integer, LineRow> entry : liveRows.entrySet()) {
+            rowHeights.set(entry.getKey(), entry.getValue().measure(width));
+        }
+        for (Map.Entry<Integer, LineRow> entry : liveRows.entrySet()) {
+            int index = entry.getKey();
+            entry.getValue().panel.setBounds(insets.left, insets.top + rowHeights.offsetOf(index),
+                    width, rowHeights.get(index));
+        }
+
+        if (rowHeights.totalHeight() != publishedHeight) {
+            // Rows were added, or estimates replaced by real measurements; the scroll extent changed
+            linesPanel.revalidate();
+        }
         linesPanel.repaint();
     }
 
-    private void notifyContentChanged() {
-        if (!updatingContent) {
-            onContentChanged.accept(getContent());
+    private LineRow materializeRow(int index) {
+        LineRow row = liveRows.get(index);
+        if (row == null) {
+            row = rowPool.isEmpty() ? createRow() : rowPool.pop();
+            row.bind(index, document.get(index));
+            liveRows.put(index, row);
+        }
+        return row;
+    }
+
+    private LineRow createRow() {
+        LineRow row = new LineRow();
+        linesPanel.add(row.panel);
+        return row;
+    }
+
+    private void releaseRow(LineRow row) {
+        if (row == editingRow) {
+            editingRow = null;
+        }
+        row.unbind();
+        rowPool.push(row);
+    }
+
+    private void releaseAllRows() {
+        for (LineRow row : liveRows.values()) {
+            releaseRow(row);
+        }
+        liveRows.clear();
+    }
+
+    /** Re-keys live rows at or after {@code fromIndex} by {@code delta} after an insert or remove. */
+    private void shiftLiveRows(int fromIndex, int delta) {
+        NavigableMap<Integer, LineRow> tail = liveRows.tailMap(fromIndex, true);
+        if (tail.isEmpty()) {
+            return;
+        }
+        List<LineRow> shifted = new ArrayList<>(tail.values());
+        tail.clear();
+        for (LineRow row : shifted) {
+            row.index += delta;
+            liveRows.put(row.index, row);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Incremental block re-split
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Queues rows whose text changed for a re-split once editing pauses. */
+    private void markDirty(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(document.size() - 1, to);
+        if (from > to) {
+            return;
+        }
+        dirtyFrom = dirtyFrom < 0 ? from : Math.min(dirtyFrom, from);
+        dirtyTo = Math.max(dirtyTo, to);
+        reparseTimer.restart();
+    }
+
+    private void shiftDirtyRows(int fromIndex, int delta) {
+        if (dirtyFrom >= fromIndex) {
+            dirtyFrom = Math.max(fromIndex, dirtyFrom + delta);
+        }
+        if (dirtyTo >= fromIndex) {
+            dirtyTo = Math.max(fromIndex - 1, dirtyTo + delta);
+        }
+    }
+
+    /**
+     * Re-splits the dirty rows and their neighbours, widened to the nearest
+     * block boundaries, so that e.g. a row typed under a table joins it and a
+     * list item split off a list becomes its own row again. Only rows whose
+     * text changed are replaced. If the row being edited falls inside the
+     * range, the re-split waits until editing stops.
+     */
+    private void reparseDirtyRows() {
+        if (dirtyFrom < 0 || document.isEmpty() || loading) {
+            return;
+        }
+        int[] range = blockRange(Math.min(dirtyFrom, document.size() - 1) - 1, dirtyTo + 1);
+        dirtyFrom = -1;
+        dirtyTo = -1;
+        if (editingRow != null && editingRow.index >= range[0] && editingRow.index <= range[1]) {
+            return;
+        }
+
+        List<String> old = rowsIn(range);
+        // Part of the edit that made the rows dirty, so undone with it
+        current.undo.continueStep(() ->
+                replaceChangedRows(range[0], old, LineDocument.splitLogicalRows(String.join("\n", old))));
+    }
+
+    // Replaces old rows starting at from with fresh ones, touching only the rows in between the common ends
+    private void replaceChangedRows(int from, List<String> old, List<String> fresh) {
+        int prefix = 0;
+        while (prefix < old.size() && prefix < fresh.size() && old.get(prefix).equals(fresh.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < old.size() - prefix && suffix < fresh.size() - prefix
+                && old.get(old.size() - 1 - suffix).equals(fresh.get(fresh.size() - 1 - suffix))) {
+            suffix++;
+        }
+        if (prefix == old.size() && prefix == fresh.size()) {
+            return;
+        }
+        replaceRows(from + prefix, old.size() - prefix - suffix, fresh.subList(prefix, fresh.size() - suffix));
+    }
+
+    /**
+     * Puts pasted text into row {@code index} in place of its current text,
+     * split into rows the same way {@link #setContent} splits a note. The
+     * block around the row is split again with it, so a paste can extend or
+     * break up a table or list. The document sees one removal and one
+     * insertion, and the rows are measured in a single layout pass.
+     */
+    private void pasteIntoRow(int index, String text, int caret) {
+        if (loading || index < 0 || index >= document.size()) {
+            return;
+        }
+        LineRow edited = liveRows.remove(index);
+        if (edited != null) {
+            releaseRow(edited);
+        }
+        int[] range = blockRange(index - 1, index + 1);
+        List<String> old = rowsIn(range);
+        old.set(index - range[0], text);
+        if (range[1] < document.size() - 1 && LogicalRowScanner.endsInsideOpenBlock(old)) {
+            // The paste opened a fence that now swallows the rest of the note
+            old.addAll(rowsIn(new int[] { range[1] + 1, document.size() - 1 }));
+            range[1] = document.size() - 1;
+        }
+        int caretOffset = caret;
+        for (int i = range[0]; i < index; i++) {
+            caretOffset += old.get(i - range[0]).length() + 1;
+        }
+        List<String> fresh = LineDocument.splitLogicalRows(String.join("\n", old));
+        old.set(index - range[0], document.get(index));
+        replaceChangedRows(range[0], old, fresh);
+        long generation = contentGeneration;
+        RENDER_PIPELINE.warm(fresh, () -> contentGeneration != generation);
+
+        int row = 0;
+        while (row < fresh.size() - 1 && caretOffset > fresh.get(row).length()) {
+            caretOffset -= fresh.get(row).length() + 1;
+            row++;
+        }
+        int caretRow = range[0] + row;
+        int caretInRow = caretOffset;
+        SwingUtilities.invokeLater(() -> editRow(caretRow, caretInRow));
+    }
+
+    /** Widens a row range to the nearest block boundaries, or to the end if it leaves a fence open. */
+    private int[] blockRange(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(document.size() - 1, to);
+        for (int widened = 0; from > 0 && widened < MAX_REPARSE_WIDEN
+                && !LogicalRowScanner.isBoundary(document.get(from - 1), document.get(from)); widened++) {
+            from--;
+        }
+        for (int widened = 0; to < document.size() - 1 && widened < MAX_REPARSE_WIDEN
+                && !LogicalRowScanner.isBoundary(document.get(to), document.get(to + 1)); widened++) {
+            to++;
+        }
+        if (LogicalRowScanner.endsInsideOpenBlock(rowsIn(new int[] { from, to }))) {
+            // An unclosed fence swallows everything after it
+            to = document.size() - 1;
+        }
+        return new int[] { from, to };
+    }
+
+    private List<String> rowsIn(int[] range) {
+        List<String> rows = new ArrayList<>(range[1] - range[0] + 1);
+        for (int i = range[0]; i <= range[1]; i++) {
+            rows.add(document.get(i));
+        }
+        return rows;
+    }
+
+    /**
+     * True if the rows are exactly what splitting their joined text would give,
+     * i.e. no re-split is pending and the row being edited has not (yet)
+     * changed the block structure around it. Row indices in the edit journal
+     * are only valid across a compaction of the note if this holds.
+     */
+    boolean rowsSettled() {
+        if (dirtyFrom >= 0) {
+            return false;
+        }
+        if (editingRow == null || editingRow.index < 0 || document.isEmpty()) {
+            return true;
+        }
+        List<String> rows = rowsIn(blockRange(editingRow.index - 1, editingRow.index + 1));
+        return LineDocument.splitLogicalRows(String.join("\n", rows)).equals(rows);
+    }
+
+    /** Stops editing and applies any pending re-split now, leaving the rows settled. */
+    void commitEdits() {
+        if (editingRow != null) {
+            editingRow.stopEditing();
+        }
+        reparseTimer.stop();
+        reparseDirtyRows();
+    }
+
+    private void replaceRows(int index, int removeCount, List<String> rows) {
+        for (int i = index; i < index + removeCount; i++) {
+            LineRow row = liveRows.remove(i);
+            if (row != null) {
+                releaseRow(row);
+            }
+        }
+        shiftLiveRows(index + removeCount, rows.size() - removeCount);
+        shiftDirtyRows(index + removeCount, rows.size() - removeCount);
+        int[] heights = new int[rows.size()];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = estimateHeight(rows.get(i));
+        }
+        rowHeights.removeRange(index, removeCount);
+        rowHeights.insertAll(index, heights);
+        document.removeRange(index, removeCount);
+        document.insertAll(index, new ArrayList<>(rows));
+        scheduleLayout();
+    }
+
+    /** Scrolls the row into view, builds it if needed and starts editing it. A negative caret means end of text. */
+    private void editRow(int index, int caret) {
+        if (loading || index < 0 || index >= document.size()) {
+            return;
+        }
+        // Scrolling lays out the viewport, which would recycle the row if it were built before
+        Insets insets = linesPanel.getInsets();
+        linesPanel.scrollRectToVisible(new Rectangle(0, insets.top + rowHeights.offsetOf(index),
+                1, rowHeights.get(index)));
+        LineRow row = materializeRow(index);
+        scheduleLayout();
+        row.startEditing();
+        if (caret >= 0) {
+            SwingUtilities.invokeLater(() -> row.setCaret(caret));
+        }
+    }
+
+    private static int estimateHeight(String rawText) {
+        int lineCount = 1;
+        for (int i = 0; i < rawText.length(); i++) {
+            if (rawText.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        if (rawText.trim().startsWith("```")) {
+            return Math.max(MIN_ROW_HEIGHT, lineCount * CODE_LINE_HEIGHT + 20);
+        }
+        if (lineCount > 1) {
+            // Table, list or quote row
+            return Math.max(MIN_ROW_HEIGHT, lineCount * TEXT_LINE_HEIGHT + 12);
+        }
+        if (rawText.startsWith("# ")) {
+            return 48;
+        }
+        if (rawText.startsWith("## ") || rawText.startsWith("### ")) {
+            return 40;
+        }
+        return MIN_ROW_HEIGHT;
+    }
+
+    /**
+     * Scrollable view whose preferred height comes from the row height index rather
+     * than from child components, so only the materialized rows exist in the tree.
+     */
+    private class VirtualLinesPanel extends JPanel implements Scrollable {
+
+        VirtualLinesPanel() {
+            super(null);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            Insets insets = getInsets();
+            return new Dimension(insets.left + insets.right,
+                    insets.top + rowHeights.totalHeight() + insets.bottom);
+        }
+
+        @Override
+        public void doLayout() {
+            publishedHeight = rowHeights.totalHeight();
+            layoutVisibleRows();
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return 16;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return Math.max(16, visibleRect.height - MIN_ROW_HEIGHT);
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            // Fill short notes so clicks below the last row still reach this panel
+            return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
         }
     }
 
     // ─────────────────────────────────────────────────────────────────────────
     // Markdown rendering helpers
     // ─────────────────────────────────────────────────────────────────────────
-    private static String renderMarkdownLine(String raw) {
+    static RenderCache renderCache() {
+        return RENDER_CACHE;
+    }
+
+    static RenderPipeline renderPipeline() {
+        return RENDER_PIPELINE;
+    }
+
+    /**
+     * Runs one small note through everything the first opened note needs:
+     * flexmark, row splitting, painted rows, and Swing's HTML parser with the
+     * shared sheet. None of it touches components, so it is meant for a
+     * background thread at startup; it loads and JITs classes the EDT would
+     * otherwise wait for the first time a note is opened.
+     */
+    static void warmUp() {
+        OpenDocument prepared = prepareDocument(WARM_UP_NOTE);
+        HTMLEditorKit kit = MarkdownStyles.newEditorKit();
+        for (int i = 0; i < prepared.document.size(); i++) {
+            String row = prepared.document.get(i);
+            if (StyledRow.of(row) == null) {
+                try {
+                    // Not through the render cache: these rows belong to no note
+                    MarkdownStyles.parseFragment(kit, buildFullHtml(renderMarkdownLineUncached(row)));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // One row of each kind the editor paints or renders
+    private static final String WARM_UP_NOTE = "# Notes\n\nSome **bold**, *em*, `code` and ~~struck~~ text.\n\n"
+            + "- [ ] task\n- item https://example.com\n\n1. first\n\n> quote\n\n"
+            + "| a | b |\n|---|---|\n| 1 | 2 |\n\n```http\nGET / HTTP/1.1\n```\n\n---\n";
+
+    /** Stops the shared render threads; only for extension unload. */
+    static void shutdown() {
+        RENDER_PIPELINE.shutdown();
+    }
+
+    static String renderMarkdownLine(String raw) {
+        return RENDER_CACHE.get(raw, MarkdownEditorPanel::renderMarkdownLineUncached);
+    }
+
+    static String renderMarkdownLineUncached(String raw) {
         String md = raw.isBlank() ? " " : raw;
-        Node doc = MD_PARSER.parse(md);
-        String html = MD_RENDERER.render(doc).trim();
+        Node doc = Markdown.parser().parse(md);
+        String html = Markdown.renderer().render(doc).trim();
         // Remove wrapping <p> tags only if this is a simple inline element
         if (html.startsWith("<p>") && html.endsWith("</p>")) {
             String inner = html.substring(3, html.length() - 4).trim();
@@ -225,128 +962,14 @@ public class MarkdownEditorPanel {
                 .replace("'", "&#39;");
     }
 
-    private static String buildFullHtml(String bodyHtml) {
-        return "<html><head><style>"
-                + "body { "
-                + "  font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', 'Helvetica Neue', Arial, sans-serif; "
-                + "  font-size: 14px; "
-                + "  color: #3d3d3d; "
-                + "  margin: 0; "
-                + "  padding: 0; "
-                + "  background: transparent; "
-                + "  line-height: 1.6; "
-                + "} "
-                + "h1, h2, h3, h4, h5, h6 { "
-                + "  color: #0056b3; "
-                + "  margin: 4px 0; "
-                + "  font-weight: 600; "
-                + "  line-height: 1.3; "
-                + "} "
-                + "h1 { font-size: 24px; } "
-                + "h2 { font-size: 20px; } "
-                + "h3 { font-size: 18px; } "
-                + "h4 { font-size: 16px; } "
-                + "h5 { font-size: 15px; } "
-                + "h6 { font-size: 14px; } "
-                + "p { margin: 2px 0; } "
-                + "strong, b { "
-                + "  color: #000000; "
-                + "  font-weight: 700; "
-                + "} "
-                + "em, i { "
-                + "  color: #555555; "
-                + "  font-style: italic; "
-                + "} "
-                + "code { "
-                + "  background-color: #f6f8fa; "
-                + "  border: 1px solid #eaeaea; "
-                + "  border-radius: 3px; "
-                + "  padding: 2px 6px; "
-                + "  font-family: 'Consolas', 'Monaco', 'Courier New', monospace; "
-                + "  font-size: 13px; "
-                + "  color: #333333; "
-                + "} "
-                + "pre { "
-                + "  background-color: #f6f8fa; "
-                + "  border: 1px solid #eaeaea; "
-                + "  border-radius: 3px; "
-                + "  padding: 8px 12px; "
-                + "  overflow: auto; "
-                + "  font-family: 'Consolas', 'Monaco', 'Courier New', monospace; "
-                + "  font-size: 12px; "
-                + "  color: #333333; "
-                + "  margin: 4px 0; "
-                + "  word-break: break-all; "
-                + "} "
-                + "pre code { "
-                + "  background: transparent; "
-                + "  border: none; "
-                + "  padding: 0; "
-                + "} "
-                + "del { "
-                + "  color: #888; "
-                + "  text-decoration: line-through; "
-                + "} "
-                + "strike { "
-                + "  color: #888; "
-                + "  text-decoration: line-through; "
-                + "} "
-                + "mark { "
-                + "  background-color: #fff3cd; "
-                + "  color: #333; "
-                + "  padding: 2px 4px; "
-                + "} "
-                + "blockquote { "
-                + "  background: #f6f6f6; "
-                + "  border-left: 4px solid #DC143C; "
-                + "  color: #555555; "
-                + "  margin: 4px 0; "
-                + "  padding: 8px 12px; "
-                + "  border-radius: 0; "
-                + "  font-style: normal; "
-                + "} "
-                + "ul, ol { "
-                + "  margin: 2px 0; "
-                + "  padding-left: 24px; "
-                + "} "
-                + "li { "
-                + "  margin: 2px 0; "
-                + "  line-height: 1.5; "
-                + "} "
-                + "a { "
-                + "  color: #0366d6; "
-                + "  text-decoration: none; "
-                + "} "
-                + "a:hover { "
-                + "  text-decoration: underline; "
-                + "} "
-                + "hr { "
-                + "  border: none; "
-                + "  border-top: 1px solid #ddd; "
-                + "  margin: 8px 0; "
-                + "} "
-                + "table { "
-                + "  border-collapse: collapse; "
-                + "  margin: 4px 0; "
-                + "  font-size: 13px; "
-                + "} "
-                + "td, th { "
-                + "  border: 1px solid #ddd; "
-                + "  padding: 6px 13px; "
-                + "  text-align: left; "
-                + "} "
-                + "th { "
-                + "  background-color: #f6f8fa; "
-                + "  font-weight: 600; "
-                + "} "
-                + "tr:nth-child(2n) { "
-                + "  background-color: #f8f8f8; "
-                + "} "
-                + "img { "
-                + "  max-width: 100%; "
-                + "  height: auto; "
-                + "} "
-                + "</style></head><body>" + bodyHtml + "</body></html>";
+    /** Rows spanning several lines (or starting a fence) are edited in the multi-line field. */
+    private static boolean isMultiLineText(String text) {
+        return text.indexOf('\n') >= 0 || text.trim().startsWith("```");
+    }
+
+    static String buildFullHtml(String bodyHtml) {
+        // Styles come from the shared, preparsed sheet installed by MarkdownStyles
+        return "<html><body>" + bodyHtml + "</body></html>";
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -355,30 +978,69 @@ public class MarkdownEditorPanel {
     private class LineRow {
 
         final JPanel panel;
-        private String rawText;
-        private final JEditorPane renderedPane;
-        private final JTextField singleLineEditField;
-        private final JTextArea multiLineEditField;
-        private final JScrollPane multiLineScroll;
+        int index = -1;
+        private String rawText = "";
+        // Simple rows are painted; the HTML pane and edit fields are only built when first needed
+        private final StyledRowView paintedView;
+        private JEditorPane renderedPane;
+        private HTMLEditorKit renderedKit;
+        private JTextField singleLineEditField;
+        private JTextArea multiLineEditField;
+        private JScrollPane multiLineScroll;
         private boolean editing = false;
         private boolean useMultiLine = false;
+        private boolean htmlReady = false;
+        // Stamp of the latest render request; results carrying an older stamp are dropped
+        private long renderGeneration = 0;
+        private int measuredWidth = -1;
+        private int measuredHeight = MIN_ROW_HEIGHT;
+        // When the oldest keystroke not yet painted by the edit field arrived, or 0
+        private long keyNanos = 0;
 
         int rowIndex() {
-            return rows.indexOf(this);
+            return index;
         }
 
-        LineRow(String initialText) {
-            this.rawText = initialText;
-            this.useMultiLine = initialText.trim().startsWith("```");
-
+        LineRow() {
             panel = new JPanel(new CardLayout());
             panel.setBackground(Color.WHITE);
-            panel.setMaximumSize(new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE));
-            panel.setMinimumSize(new Dimension(0, 28));
-            panel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            panel.setMinimumSize(new Dimension(0, MIN_ROW_HEIGHT));
 
+            paintedView = new StyledRowView();
+            paintedView.setBackground(Color.WHITE);
+            paintedView.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+            paintedView.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseEntered(MouseEvent e) {
+                    setHover(true);
+                }
+
+                @Override
+                public void mouseExited(MouseEvent e) {
+                    setHover(false);
+                }
+
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() == 1) {
+                        startEditing();
+                    }
+                }
+            });
+
+            panel.add(paintedView, "PAINTED");
+            showCard("PAINTED");
+            panel.setVisible(false);
+        }
+
+        /** Builds the HTML pane the first time this row shows a complex block. */
+        private void ensureRenderedPane() {
+            if (renderedPane != null) {
+                return;
+            }
             renderedPane = new JEditorPane();
-            renderedPane.setContentType("text/html;charset=utf-8");
+            renderedKit = MarkdownStyles.newEditorKit();
+            renderedPane.setEditorKit(renderedKit);
             renderedPane.setEditable(false);
             renderedPane.setOpaque(true);
             renderedPane.setBackground(Color.WHITE);
@@ -387,25 +1049,16 @@ public class MarkdownEditorPanel {
             renderedPane.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
             // Enable text selection and right-click copy
             renderedPane.setFocusable(true);
-            renderedPane.addPropertyChangeListener("page", evt -> SwingUtilities.invokeLater(() -> {
-                Dimension prefSize = renderedPane.getPreferredSize();
-                int h = Math.max(28, prefSize.height);
-                panel.setPreferredSize(new Dimension(0, h));
-                linesPanel.revalidate();
-                linesPanel.repaint();
-            }));
 
             renderedPane.addMouseListener(new MouseAdapter() {
                 @Override
                 public void mouseEntered(MouseEvent e) {
-                    panel.setBackground(new Color(245, 248, 255));
-                    renderedPane.setBackground(new Color(245, 248, 255));
+                    setHover(true);
                 }
 
                 @Override
                 public void mouseExited(MouseEvent e) {
-                    panel.setBackground(Color.WHITE);
-                    renderedPane.setBackground(Color.WHITE);
+                    setHover(false);
                 }
 
                 @Override
@@ -431,10 +1084,22 @@ public class MarkdownEditorPanel {
                 }
             });
 
-            updateRendered();
+            panel.add(renderedPane, "RENDERED");
+        }
 
+        /** Builds the edit fields the first time this row is edited. */
+        private void ensureEditFields() {
+            if (singleLineEditField != null) {
+                return;
+            }
             // Single-line editor (JTextField)
-            singleLineEditField = new JTextField(rawText);
+            singleLineEditField = new JTextField() {
+                @Override
+                protected void paintComponent(java.awt.Graphics g) {
+                    super.paintComponent(g);
+                    keyPainted();
+                }
+            };
             singleLineEditField.setBackground(new Color(250, 250, 255));
             singleLineEditField.setForeground(new Color(50, 50, 50));
             singleLineEditField.setCaretColor(new Color(0, 100, 250));
@@ -464,30 +1129,17 @@ public class MarkdownEditorPanel {
                         singleLineEditField.setText(beforeCursor);
                         rawText = beforeCursor;
 
-                        LineRow newRow = insertRowAfter(idx, afterCursor);
+                        insertRowAfter(idx, afterCursor);
                         stopEditing();
-                        SwingUtilities.invokeLater(() -> {
-                            newRow.startEditing();
-                            if (newRow.useMultiLine) {
-                                newRow.multiLineEditField.setCaretPosition(0);
-                            } else {
-                                newRow.singleLineEditField.setCaretPosition(0);
-                            }
-                        });
+                        SwingUtilities.invokeLater(() -> editRow(idx + 1, 0));
                     } else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE
                             && singleLineEditField.getText().isEmpty() && idx > 0) {
                         e.consume();
                         int prevIdx = idx - 1;
-                        String prevText = rows.get(prevIdx).getRawText();
+                        String prevText = document.get(prevIdx);
                         stopEditing();
                         removeRow(idx);
-                        rows.get(prevIdx).startEditing();
-                        LineRow prevRow = rows.get(prevIdx);
-                        if (prevRow.useMultiLine) {
-                            prevRow.multiLineEditField.setCaretPosition(prevText.length());
-                        } else {
-                            prevRow.singleLineEditField.setCaretPosition(prevText.length());
-                        }
+                        editRow(prevIdx, prevText.length());
                     } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
                         stopEditing();
                         e.consume();
@@ -496,17 +1148,25 @@ public class MarkdownEditorPanel {
 
                 @Override
                 public void keyReleased(KeyEvent e) {
-                    rawText = singleLineEditField.getText();
+                    if (!editing) {
+                        return;
+                    }
+                    syncText();
                     if (rawText.trim().startsWith("```")) {
                         useMultiLine = true;
                         switchToMultiLine();
                     }
-                    notifyContentChanged();
                 }
             });
 
             // Multi-line editor (JTextArea)
-            multiLineEditField = new JTextArea(rawText);
+            multiLineEditField = new JTextArea() {
+                @Override
+                protected void paintComponent(java.awt.Graphics g) {
+                    super.paintComponent(g);
+                    keyPainted();
+                }
+            };
             multiLineEditField.setLineWrap(true);
             multiLineEditField.setWrapStyleWord(true);
             multiLineEditField.setBackground(new Color(250, 250, 255));
@@ -545,30 +1205,17 @@ public class MarkdownEditorPanel {
                         multiLineEditField.setText(beforeCursor);
                         rawText = beforeCursor;
 
-                        LineRow newRow = insertRowAfter(idx, afterCursor);
+                        insertRowAfter(idx, afterCursor);
                         stopEditing();
-                        SwingUtilities.invokeLater(() -> {
-                            newRow.startEditing();
-                            if (newRow.useMultiLine) {
-                                newRow.multiLineEditField.setCaretPosition(0);
-                            } else {
-                                newRow.singleLineEditField.setCaretPosition(0);
-                            }
-                        });
+                        SwingUtilities.invokeLater(() -> editRow(idx + 1, 0));
                     } else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE
                             && multiLineEditField.getText().isEmpty() && idx > 0) {
                         e.consume();
                         int prevIdx = idx - 1;
-                        String prevText = rows.get(prevIdx).getRawText();
+                        String prevText = document.get(prevIdx);
                         stopEditing();
                         removeRow(idx);
-                        rows.get(prevIdx).startEditing();
-                        LineRow prevRow = rows.get(prevIdx);
-                        if (prevRow.useMultiLine) {
-                            prevRow.multiLineEditField.setCaretPosition(prevText.length());
-                        } else {
-                            prevRow.singleLineEditField.setCaretPosition(prevText.length());
-                        }
+                        editRow(prevIdx, prevText.length());
                     } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
                         stopEditing();
                         e.consume();
@@ -577,22 +1224,181 @@ public class MarkdownEditorPanel {
 
                 @Override
                 public void keyReleased(KeyEvent e) {
-                    rawText = multiLineEditField.getText();
-                    if (!rawText.trim().startsWith("```")) {
+                    if (!editing) {
+                        return;
+                    }
+                    syncText();
+                    if (!isMultiLineText(rawText)) {
                         useMultiLine = false;
                         switchToSingleLine();
                     } else {
                         updateEditFieldHeight();
                     }
-                    notifyContentChanged();
                 }
             });
 
-            panel.add(renderedPane, "RENDERED");
+            KeyAdapter keyTiming = new KeyAdapter() {
+                @Override
+                public void keyTyped(KeyEvent e) {
+                    keyArrived(e);
+                }
+            };
+            singleLineEditField.addKeyListener(keyTiming);
+            multiLineEditField.addKeyListener(keyTiming);
+
+            singleLineEditField.setTransferHandler(new BulkPasteHandler(singleLineEditField.getTransferHandler()));
+            multiLineEditField.setTransferHandler(new BulkPasteHandler(multiLineEditField.getTransferHandler()));
+
             panel.add(singleLineEditField, "EDIT_SINGLE");
             panel.add(multiLineScroll, "EDIT_MULTI");
+        }
 
-            showCard("RENDERED");
+        /**
+         * Starts timing a keystroke from when it was generated, so time spent
+         * queued behind other events counts too. Keys typed before the field
+         * paints again are timed from the first of them.
+         */
+        private void keyArrived(KeyEvent e) {
+            if (keyNanos == 0) {
+                long queuedMillis = Math.max(0, System.currentTimeMillis() - e.getWhen());
+                keyNanos = System.nanoTime() - queuedMillis * 1_000_000L;
+            }
+        }
+
+        private void keyPainted() {
+            if (keyNanos != 0) {
+                Diagnostics.KEYSTROKE_TO_PAINT.recordSince(keyNanos);
+                keyNanos = 0;
+            }
+        }
+
+        /**
+         * Sends pastes that would not fit the edit field to {@link #pasteIntoRow}:
+         * any line break in the single-line field, which would drop it, and
+         * large payloads that would otherwise become one huge text area.
+         * Copying, dragging and other pastes go to the field's own handler.
+         */
+        private class BulkPasteHandler extends TransferHandler {
+            private final TransferHandler delegate;
+
+            BulkPasteHandler(TransferHandler delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public boolean importData(TransferSupport support) {
+                if (editing && !support.isDrop() && support.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+                    try {
+                        String text = (String) support.getTransferable().getTransferData(DataFlavor.stringFlavor);
+                        JTextComponent field = (JTextComponent) support.getComponent();
+                        if (isBulkPaste(text, field == singleLineEditField)) {
+                            pasteRows(field, text);
+                            return true;
+                        }
+                    } catch (UnsupportedFlavorException | IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                return delegate.importData(support);
+            }
+
+            @Override
+            public boolean canImport(TransferSupport support) {
+                return delegate.canImport(support);
+            }
+
+            @Override
+            public int getSourceActions(JComponent c) {
+                return delegate.getSourceActions(c);
+            }
+
+            @Override
+            public void exportAsDrag(JComponent comp, InputEvent e, int action) {
+                delegate.exportAsDrag(comp, e, action);
+            }
+
+            @Override
+            public void exportToClipboard(JComponent comp, Clipboard clip, int action) {
+                delegate.exportToClipboard(comp, clip, action);
+            }
+        }
+
+        private boolean isBulkPaste(String text, boolean singleLine) {
+            int lines = 1;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    if (singleLine) {
+                        return true;
+                    }
+                    if (++lines >= BULK_PASTE_LINES) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // The field's text with the paste in place of its selection replaces the row
+        private void pasteRows(JTextComponent field, String pasted) {
+            String text = field.getText();
+            int start = field.getSelectionStart();
+            int end = field.getSelectionEnd();
+            String normalized = pasted.replace("\r\n", "\n").replace('\r', '\n');
+            pasteIntoRow(index, text.substring(0, start) + normalized + text.substring(end),
+                    start + normalized.length());
+        }
+
+        private void setHover(boolean hover) {
+            Color background = hover ? new Color(245, 248, 255) : Color.WHITE;
+            panel.setBackground(background);
+            paintedView.setBackground(background);
+            if (renderedPane != null) {
+                renderedPane.setBackground(background);
+            }
+        }
+
+        /** Attaches this (possibly recycled) component to a model row. */
+        void bind(int index, String text) {
+            this.index = index;
+            this.rawText = text;
+            this.useMultiLine = isMultiLineText(text);
+            this.editing = false;
+            updateRendered();
+            showViewCard();
+            setHover(false);
+            panel.setVisible(true);
+        }
+
+        /** Detaches this component from its row so it can be reused for another one. */
+        void unbind() {
+            editing = false;
+            keyNanos = 0;
+            renderGeneration++;
+            index = -1;
+            rawText = "";
+            panel.setVisible(false);
+        }
+
+        /** Copies the edit field text back into the row and the model, which reports it if it changed. */
+        void syncText() {
+            if (editing) {
+                rawText = useMultiLine ? multiLineEditField.getText() : singleLineEditField.getText();
+            }
+            if (index >= 0) {
+                document.set(index, rawText);
+            }
+        }
+
+        void setCaret(int caret) {
+            if (singleLineEditField == null) {
+                return;
+            }
+            if (useMultiLine) {
+                multiLineEditField.setCaretPosition(Math.min(caret, multiLineEditField.getText().length()));
+            } else {
+                singleLineEditField.setCaretPosition(Math.min(caret, singleLineEditField.getText().length()));
+            }
         }
 
         private void switchToMultiLine() {
@@ -610,10 +1416,15 @@ public class MarkdownEditorPanel {
         }
 
         void startEditing() {
-            if (editing) {
+            if (editing || loading) {
                 return;
             }
+            if (editingRow != null && editingRow != this) {
+                editingRow.stopEditing();
+            }
+            ensureEditFields();
             editing = true;
+            editingRow = this;
             if (useMultiLine) {
                 multiLineEditField.setText(rawText);
                 showCard("EDIT_MULTI");
@@ -637,71 +1448,129 @@ public class MarkdownEditorPanel {
             if (!editing) {
                 return;
             }
+            syncText();
             editing = false;
-            rawText = useMultiLine ? multiLineEditField.getText() : singleLineEditField.getText();
+            // Keys that ended editing are painted by other rows, if at all
+            keyNanos = 0;
+            if (editingRow == this) {
+                editingRow = null;
+            }
+            markDirty(index, index);
             updateRendered();
-            showCard("RENDERED");
-            notifyContentChanged();
+            showViewCard();
         }
 
         private void updateEditFieldHeight() {
-            int height;
-            if (useMultiLine) {
-                java.awt.FontMetrics fm = multiLineEditField.getFontMetrics(multiLineEditField.getFont());
-                int lineHeight = fm.getHeight();
-                int lineCount = multiLineEditField.getLineCount();
-                height = Math.max(28, (lineCount * lineHeight) + 12);
-            } else {
-                height = 28;
+            if (!editing || index < 0) {
+                return;
             }
+            invalidateMeasure();
+        }
 
-            panel.setPreferredSize(new Dimension(0, height));
-            linesPanel.revalidate();
-            linesPanel.repaint();
+        // The next layout pass measures this row again
+        private void invalidateMeasure() {
+            measuredWidth = -1;
+            scheduleLayout();
         }
 
-        String getRawText() {
+        /** Preferred height of the current card at the given width, cached until the row changes. */
+        int measure(int width) {
+            if (width == measuredWidth) {
+                return measuredHeight;
+            }
+            int height;
             if (editing) {
-                return useMultiLine ? multiLineEditField.getText() : singleLineEditField.getText();
+                if (useMultiLine) {
+                    java.awt.FontMetrics fm = multiLineEditField.getFontMetrics(multiLineEditField.getFont());
+                    int lineHeight = fm.getHeight();
+                    int lineCount = multiLineEditField.getLineCount();
+                    height = Math.max(MIN_ROW_HEIGHT, (lineCount * lineHeight) + 12);
+                } else {
+                    height = MIN_ROW_HEIGHT;
+                }
+            } else if (!htmlReady) {
+                height = Math.max(MIN_ROW_HEIGHT, paintedView.preferredHeight(width));
+            } else {
+                renderedPane.setSize(width, Short.MAX_VALUE);
+                Dimension prefSize = renderedPane.getPreferredSize();
+
+                int lineCount = rawText.split("\n", -1).length;
+                height = Math.max(MIN_ROW_HEIGHT, prefSize.height);
+
+                if (lineCount > 1) {
+                    java.awt.FontMetrics fm = renderedPane.getFontMetrics(renderedPane.getFont());
+                    int minHeight = (lineCount * fm.getHeight()) + 20;
+                    height = Math.max(height, minHeight);
+                }
             }
-            return rawText;
+            measuredWidth = width;
+            measuredHeight = height;
+            return height;
         }
 
         private void updateRendered() {
+            long start = System.nanoTime();
             try {
-                String bodyHtml = renderMarkdownLine(rawText);
-                String html = buildFullHtml(bodyHtml);
-
-                java.io.StringReader reader = new java.io.StringReader(html);
-                renderedPane.read(reader, null);
-
-                SwingUtilities.invokeLater(() -> {
-                    int width = linesPanel.getWidth();
-                    if (width <= 0) {
-                        width = 600;
-                    }
-
-                    renderedPane.setSize(width - 40, Integer.MAX_VALUE);
-                    Dimension prefSize = renderedPane.getPreferredSize();
+                render();
+            } finally {
+                Diagnostics.ROW_RENDER.recordSince(start);
+            }
+        }
 
-                    int lineCount = rawText.split("\n", -1).length;
-                    int estimatedHeight = Math.max(28, prefSize.height);
+        private void render() {
+            long generation = ++renderGeneration;
+            StyledRow styled = StyledRow.of(rawText);
+            if (styled != null) {
+                paintedView.setRow(styled);
+                releaseHtml();
+                invalidateMeasure();
+                return;
+            }
+            String cached = RENDER_CACHE.getIfPresent(rawText);
+            if (cached != null) {
+                showHtml(cached);
+                return;
+            }
 
-                    if (lineCount > 1) {
-                        java.awt.FontMetrics fm = renderedPane.getFontMetrics(renderedPane.getFont());
-                        int minHeight = (lineCount * fm.getHeight()) + 20;
-                        estimatedHeight = Math.max(estimatedHeight, minHeight);
+            // Unstyled text stands in until the background render delivers HTML
+            paintedView.setRow(StyledRow.plain(rawText));
+            releaseHtml();
+            invalidateMeasure();
+            RENDER_PIPELINE.render(rawText, bodyHtml -> {
+                // Dropped if the row was edited, recycled or the note switched meanwhile
+                if (generation == renderGeneration && index >= 0) {
+                    showHtml(bodyHtml);
+                    if (!editing) {
+                        showViewCard();
                     }
+                }
+            });
+        }
 
-                    panel.setPreferredSize(new Dimension(0, estimatedHeight));
-                    linesPanel.revalidate();
-                    linesPanel.repaint();
-                });
+        private void showHtml(String bodyHtml) {
+            ensureRenderedPane();
+            try {
+                String html = buildFullHtml(bodyHtml);
+                renderedPane.setDocument(MarkdownStyles.parseFragment(renderedKit, html));
+                htmlReady = true;
+                invalidateMeasure();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
 
+        // Drops the HTML view tree of a complex row this component showed before; the pane itself is kept for reuse
+        private void releaseHtml() {
+            if (htmlReady) {
+                renderedPane.setDocument(renderedKit.createDefaultDocument());
+                htmlReady = false;
+            }
+        }
+
+        private void showViewCard() {
+            showCard(htmlReady ? "RENDERED" : "PAINTED");
+        }
+
         private void showCard(String card) {
             ((CardLayout) panel.getLayout()).show(panel, card);
         }
@@ -0,0 +1,186 @@
+package com.notesplus;
+
+import java.io.StringReader;
+
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * Stylesheet for rendered rows, parsed once and shared by every row's document.
+ * Rows only ever receive their body fragment; the rules below are linked into
+ * each document instead of being re-sent and re-parsed with every render.
+ */
+final class MarkdownStyles {
+
+    static final String CSS =
+            "body { "
+            + "  font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', 'Helvetica Neue', Arial, sans-serif; "
+            + "  font-size: 14px; "
+            + "  color: #3d3d3d; "
+            + "  margin: 0; "
+            + "  padding: 0; "
+            + "  background: transparent; "
+            + "  line-height: 1.6; "
+            + "} "
+            + "h1, h2, h3, h4, h5, h6 { "
+            + "  color: #0056b3; "
+            + "  margin: 4px 0; "
+            + "  font-weight: 600; "
+            + "  line-height: 1.3; "
+            + "} "
+            + "h1 { font-size: 24px; } "
+            + "h2 { font-size: 20px; } "
+            + "h3 { font-size: 18px; } "
+            + "h4 { font-size: 16px; } "
+            + "h5 { font-size: 15px; } "
+            + "h6 { font-size: 14px; } "
+            + "p { margin: 2px 0; } "
+            + "strong, b { "
+            + "  color: #000000; "
+            + "  font-weight: 700; "
+            + "} "
+            + "em, i { "
+            + "  color: #555555; "
+            + "  font-style: italic; "
+            + "} "
+            + "code { "
+            + "  background-color: #f6f8fa; "
+            + "  border: 1px solid #eaeaea; "
+            + "  border-radius: 3px; "
+            + "  padding: 2px 6px; "
+            + "  font-family: 'Consolas', 'Monaco', 'Courier New', monospace; "
+            + "  font-size: 13px; "
+            + "  color: #333333; "
+            + "} "
+            + "pre { "
+            + "  background-color: #f6f8fa; "
+            + "  border: 1px solid #eaeaea; "
+            + "  border-radius: 3px; "
+            + "  padding: 8px 12px; "
+            + "  overflow: auto; "
+            + "  font-family: 'Consolas', 'Monaco', 'Courier New', monospace; "
+            + "  font-size: 12px; "
+            + "  color: #333333; "
+            + "  margin: 4px 0; "
+            + "  word-break: break-all; "
+            + "} "
+            + "pre code { "
+            + "  background: transparent; "
+            + "  border: none; "
+            + "  padding: 0; "
+            + "} "
+            + "del { "
+            + "  color: #888; "
+            + "  text-decoration: line-through; "
+            + "} "
+            + "strike { "
+            + "  color: #888; "
+            + "  text-decoration: line-through; "
+            + "} "
+            + "mark { "
+            + "  background-color: #fff3cd; "
+            + "  color: #333; "
+            + "  padding: 2px 4px; "
+            + "} "
+            + "blockquote { "
+            + "  background: #f6f6f6; "
+            + "  border-left: 4px solid #DC143C; "
+            + "  color: #555555; "
+            + "  margin: 4px 0; "
+            + "  padding: 8px 12px; "
+            + "  border-radius: 0; "
+            + "  font-style: normal; "
+            + "} "
+            + "ul, ol { "
+            + "  margin: 2px 0; "
+            + "  padding-left: 24px; "
+            + "} "
+            + "li { "
+            + "  margin: 2px 0; "
+            + "  line-height: 1.5; "
+            + "} "
+            + "a { "
+            + "  color: #0366d6; "
+            + "  text-decoration: none; "
+            + "} "
+            + "a:hover { "
+            + "  text-decoration: underline; "
+            + "} "
+            + "hr { "
+            + "  border: none; "
+            + "  border-top: 1px solid #ddd; "
+            + "  margin: 8px 0; "
+            + "} "
+            + "table { "
+            + "  border-collapse: collapse; "
+            + "  margin: 4px 0; "
+            + "  font-size: 13px; "
+            + "} "
+            + "td, th { "
+            + "  border: 1px solid #ddd; "
+            + "  padding: 6px 13px; "
+            + "  text-align: left; "
+            + "} "
+            + "th { "
+            + "  background-color: #f6f8fa; "
+            + "  font-weight: 600; "
+            + "} "
+            + "tr:nth-child(2n) { "
+            + "  background-color: #f8f8f8; "
+            + "} "
+            + "img { "
+            + "  max-width: 100%; "
+            + "  height: auto; "
+            + "} ";
+
+    private static volatile StyleSheet shared;
+
+    private MarkdownStyles() {
+    }
+
+    /** The preparsed row stylesheet, layered over Swing's default HTML rules. */
+    static StyleSheet sharedStyleSheet() {
+        StyleSheet sheet = shared;
+        if (sheet == null) {
+            synchronized (MarkdownStyles.class) {
+                sheet = shared;
+                if (sheet == null) {
+                    sheet = new StyleSheet();
+                    sheet.addStyleSheet(new HTMLEditorKit().getStyleSheet());
+                    sheet.addRule(CSS);
+                    shared = sheet;
+                }
+            }
+        }
+        return sheet;
+    }
+
+    /**
+     * Editor kit whose documents link the shared sheet rather than owning a copy.
+     * Kits are cheap; it is the parsed rules that are shared.
+     */
+    static HTMLEditorKit newEditorKit() {
+        return new SharedStyleEditorKit();
+    }
+
+    /** Parses a row body fragment into a document that uses the shared sheet. */
+    static HTMLDocument parseFragment(HTMLEditorKit kit, String html) throws Exception {
+        HTMLDocument doc = (HTMLDocument) kit.createDefaultDocument();
+        kit.read(new StringReader(html), doc, 0);
+        return doc;
+    }
+
+    private static final class SharedStyleEditorKit extends HTMLEditorKit {
+
+        @Override
+        public StyleSheet getStyleSheet() {
+            return sharedStyleSheet();
+        }
+
+        @Override
+        public void setStyleSheet(StyleSheet s) {
+            // The shared sheet is fixed; ignore attempts to replace it per row
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.notesplus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Persistent catalog of the notes directory (name, size, mtime, title, tags).
+ *
+ * The sidebar is filled from the catalog file at startup without listing the
+ * directory. A background thread then reconciles the catalog with the disk
+ * once, and after that follows a WatchService, so only the notes that were
+ * added, removed or changed are reported to listeners, on the EDT.
+ */
+class NoteCatalog implements AutoCloseable {
+
+    record Entry(String name, long size, long modifiedMillis, String title, List<String> tags) {
+    }
+
+    /** Deltas from the catalog; always called on the EDT. */
+    interface Listener {
+        void noteAdded(Entry entry);
+
+        void noteRemoved(String name);
+
+        void noteChanged(Entry entry);
+    }
+
+    private static final String CATALOG_FILE = ".catalog";
+    private static final int HEADER_SCAN_LINES = 64;
+    // Filesystem events arriving within this window are applied as one batch
+    private static final long QUIET_PERIOD_MILLIS = 300;
+    private static final Pattern TAG = Pattern.compile("(?<![\\w#])#([A-Za-z][\\w-]*)");
+
+    private final Path directory;
+    private final Path catalogFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean dirty = false;
+    private volatile boolean closed = false;
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    NoteCatalog(Path directory) {
+        this.directory = directory;
+        this.catalogFile = directory.resolve(CATALOG_FILE);
+        loadCatalogFile();
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /** Snapshot of all entries, in no particular order. */
+    List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /** Note names in sidebar order, straight from the catalog. */
+    List<String> sortedNames() {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Starts the background reconcile and directory watch. */
+    void start() {
+        watcher = new Thread(this::runWatcher, "notes-catalog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Re-stats one note and reports the delta. Used after the extension itself
+     * creates or deletes a note, so the sidebar updates without waiting for the watcher.
+     */
+    void refresh(String name) {
+        Path file = directory.resolve(name + ".md");
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                remove(name);
+                return;
+            }
+            Entry existing = entries.get(name);
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (existing != null && existing.size() == attrs.size() && existing.modifiedMillis() == modified) {
+                return;
+            }
+            Entry entry = readEntry(name, file, attrs.size(), modified);
+            entries.put(name, entry);
+            dirty = true;
+            fire(existing == null ? l -> l.noteAdded(entry) : l -> l.noteChanged(entry));
+        } catch (NoSuchFileException e) {
+            remove(name);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (watcher != null) {
+            try {
+                watcher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        saveCatalogFile();
+    }
+
+    private void remove(String name) {
+        if (entries.remove(name) != null) {
+            dirty = true;
+            fire(l -> l.noteRemoved(name));
+        }
+    }
+
+    private void runWatcher() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Catch up with changes made while Burp was not running; only stats unchanged files
+        reconcile();
+
+        Set<String> changed = new LinkedHashSet<>();
+        while (!closed && watchService != null) {
+            try {
+                WatchKey key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    for (String name : changed) {
+                        refresh(name);
+                    }
+                    changed.clear();
+                    if (dirty) {
+                        saveCatalogFile();
+                    }
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed.clear();
+                        reconcile();
+                        continue;
+                    }
+                    String fileName = event.context().toString();
+                    if (fileName.endsWith(".md")) {
+                        changed.add(fileName.substring(0, fileName.length() - 3));
+                    }
+                }
+                key.reset();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private void reconcile() {
+        Set<String> onDisk = new HashSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".md"))
+                    .map(n -> n.substring(0, n.length() - 3))
+                    .forEach(onDisk::add);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (String name : onDisk) {
+            refresh(name);
+        }
+        for (String name : new ArrayList<>(entries.keySet())) {
+            if (!onDisk.contains(name)) {
+                remove(name);
+            }
+        }
+        if (dirty) {
+            saveCatalogFile();
+        }
+    }
+
+    private static Entry readEntry(String name, Path file, long size, long modified) throws IOException {
+        String title = name;
+        Set<String> tags = new LinkedHashSet<>();
+        boolean titleFound = false;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null && lineNo++ < HEADER_SCAN_LINES) {
+                String trimmed = line.trim();
+                if (!titleFound && !trimmed.isEmpty()) {
+                    title = trimmed.replaceFirst("^#+\\s*", "");
+                    titleFound = true;
+                }
+                Matcher m = TAG.matcher(trimmed);
+                while (m.find()) {
+                    tags.add(m.group(1));
+                }
+            }
+        }
+        if (title.length() > 120) {
+            title = title.substring(0, 120);
+        }
+        return new Entry(name, size, modified, title, List.copyOf(tags));
+    }
+
+    private void fire(Consumer<Listener> delivery) {
+        Runnable deliver = () -> {
+            for (Listener listener : listeners) {
+                delivery.accept(listener);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliver.run();
+        } else {
+            SwingUtilities.invokeLater(deliver);
+        }
+    }
+
+    // One note per line: name, size, mtime, title, comma-separated tags; tab separated
+    private void loadCatalogFile() {
+        if (!Files.exists(catalogFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(catalogFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 5) {
+                    continue;
+                }
+                List<String> tags = fields[4].isEmpty() ? List.of() : List.of(fields[4].split(","));
+                entries.put(fields[0], new Entry(fields[0], Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]), fields[3], tags));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A damaged catalog is rebuilt by the reconcile pass
+            entries.clear();
+        }
+    }
+
+    private synchronized void saveCatalogFile() {
+        dirty = false;
+        StringBuilder sb = new StringBuilder();
+        for (String name : sortedNames()) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                continue;
+            }
+            sb.append(entry.name()).append('\t')
+                    .append(entry.size()).append('\t')
+                    .append(entry.modifiedMillis()).append('\t')
+                    .append(entry.title().replaceAll("[\\t\\r\\n]", " ")).append('\t')
+                    .append(String.join(",", entry.tags())).append('\n');
+        }
+        try {
+            NotePersistenceService.writeAtomically(catalogFile, sb.toString());
+        } catch (IOException e) {
+            dirty = true;
+            e.printStackTrace();
+        }
+    }
+}
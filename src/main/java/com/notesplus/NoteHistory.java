@@ -0,0 +1,542 @@
+package com.notesplus;
+
+import javax.swing.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Earlier versions of each note, kept as store data {@code .<note>.history}
+ * beside the note, so an accidental mass delete can be undone after
+ * autosave has written it.
+ *
+ * The history is an append-only list of framed records, each a full
+ * snapshot or a line delta against the version before it, deflated. A new
+ * snapshot is only written once the deltas since the last one outgrow it,
+ * so storage follows the amount of editing rather than note size times the
+ * number of saves, and rebuilding a version reads at most about two
+ * snapshots' worth of records.
+ *
+ * Saves are recorded as a version at most every few minutes, and right away
+ * when a save removes many lines, in which case the state before it is
+ * recorded too. Records are written on a background thread; old ones are
+ * dropped by the {@link Retention} limits, folding the oldest kept version
+ * into a snapshot.
+ */
+final class NoteHistory implements AutoCloseable {
+
+    /** How much history to keep per note; the latest version is always kept. */
+    record Retention(int maxVersions, int maxAgeDays) {
+    }
+
+    /**
+     * A version as listed in the history. No two versions of a note share a
+     * {@code timeMillis}, so it names the version even after pruning has
+     * dropped the ones before it.
+     */
+    record Version(long timeMillis, int lines, boolean snapshot, int storedBytes) {
+    }
+
+    private static final long RECORD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // A save removing this many lines also records the state before it
+    private static final int MASS_DELETE_LINES = 20;
+    private static final byte SNAPSHOT = 0;
+    private static final byte DELTA = 1;
+    private static final int FRAME_HEADER = 8;
+    private static final int CACHED_NOTES = 4;
+
+    /** The last recorded and last saved lines of a note; history thread only. */
+    private static final class Tail {
+        List<String> recorded;
+        long recordedAt;
+        List<String> saved;
+        int versions;
+        long oldestMillis;
+        int snapshotBytes;
+        int deltaBytes;
+    }
+
+    /** A record as read back: its header fields and still-deflated body. */
+    private record Record(byte kind, long timeMillis, int lines, byte[] body, int frameBytes) {
+    }
+
+    private final NoteStore store;
+    private volatile Retention retention;
+    private final Map<String, Tail> tails = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+            return size() > CACHED_NOTES;
+        }
+    };
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notes-history");
+        t.setDaemon(true);
+        return t;
+    });
+
+    NoteHistory(NoteStore store, Retention retention) {
+        this.store = store;
+        this.retention = retention;
+    }
+
+    void setRetention(Retention retention) {
+        this.retention = retention;
+    }
+
+    /** A note was opened; records it as it is now if it has no history yet. */
+    void opened(String name) {
+        execute(() -> {
+            Tail tail = tail(name);
+            if (tail.recorded == null && store.modifiedMillis(name) >= 0) {
+                List<String> lines = LineDiff.lines(store.load(name));
+                tail.saved = lines;
+                record(name, tail, lines);
+            }
+        });
+    }
+
+    /** The editor saved these rows of a note. */
+    void saved(String name, List<String> rows) {
+        execute(() -> {
+            Tail tail = tail(name);
+            List<String> lines = LineDiff.lines(String.join("\n", rows));
+            if (tail.recorded == null) {
+                tail.saved = lines;
+                record(name, tail, lines);
+                return;
+            }
+            if (tail.saved != tail.recorded && removedLines(tail.saved, lines) >= MASS_DELETE_LINES) {
+                record(name, tail, tail.saved);
+            }
+            tail.saved = lines;
+            if (System.currentTimeMillis() - tail.recordedAt >= RECORD_INTERVAL_MILLIS) {
+                record(name, tail, lines);
+            }
+        });
+    }
+
+    /** Records the last saved state of a note now, if it is not a version yet; before restoring, say. */
+    void checkpoint(String name) {
+        execute(() -> {
+            Tail tail = tail(name);
+            if (tail.saved != null && tail.saved != tail.recorded) {
+                record(name, tail, tail.saved);
+            }
+        });
+    }
+
+    /** The note is gone; so is its history. */
+    void deleted(String name) {
+        execute(() -> {
+            tails.remove(name);
+            store.deleteData(key(name));
+        });
+    }
+
+    /** Lists the note's versions, oldest first, and hands them to {@code onEdt}; null if unreadable. */
+    void versions(String name, Consumer<List<Version>> onEdt) {
+        submit(onEdt, () -> {
+            List<Record> records = read(name);
+            List<Version> versions = new ArrayList<>(records.size());
+            for (Record record : records) {
+                versions.add(new Version(record.timeMillis(), record.lines(), record.kind() == SNAPSHOT,
+                        record.frameBytes()));
+            }
+            return versions;
+        });
+    }
+
+    /** Hands the text of the version recorded at {@code timeMillis} to {@code onEdt}; null if unreadable or pruned. */
+    void text(String name, long timeMillis, Consumer<String> onEdt) {
+        submit(onEdt, () -> {
+            List<Record> records = read(name);
+            int number = indexOf(records, timeMillis);
+            return number < 0 ? null : String.join("\n", rebuild(records, number));
+        });
+    }
+
+    /**
+     * Hands {@code onEdt} a unified diff from a version to {@code current}
+     * (the rows the editor has now), or, if {@code current} is null, from the
+     * version before it, i.e. what that version changed.
+     */
+    void diff(String name, long timeMillis, List<String> current, Consumer<String> onEdt) {
+        submit(onEdt, () -> {
+            List<Record> records = read(name);
+            int number = indexOf(records, timeMillis);
+            if (number < 0) {
+                return null;
+            }
+            List<String> version = rebuild(records, number);
+            if (current != null) {
+                return LineDiff.unified(version, LineDiff.lines(String.join("\n", current)), 3);
+            }
+            List<String> before = number > 0 ? rebuild(records, number - 1) : Collections.emptyList();
+            return LineDiff.unified(before, version, 3);
+        });
+    }
+
+    @Override
+    public void close() {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Recording
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private static int removedLines(List<String> before, List<String> after) {
+        int removed = 0;
+        for (LineDiff.Hunk hunk : LineDiff.diff(before, after)) {
+            removed += hunk.removed();
+        }
+        return removed;
+    }
+
+    private void record(String name, Tail tail, List<String> lines) throws IOException {
+        // Strictly increasing, as the time is what names a version
+        long now = System.currentTimeMillis();
+        if (tail.recorded != null) {
+            now = Math.max(now, tail.recordedAt + 1);
+        }
+        byte[] record = null;
+        if (tail.recorded != null) {
+            List<LineDiff.Hunk> hunks = LineDiff.diff(tail.recorded, lines);
+            if (hunks.isEmpty()) {
+                tail.recorded = lines;
+                return;
+            }
+            byte[] delta = frame(payload(DELTA, now, lines.size(), deflate(encodeDelta(hunks, lines))));
+            // Deltas may add up to one more snapshot's worth before the next snapshot
+            if (tail.deltaBytes + delta.length <= tail.snapshotBytes) {
+                record = delta;
+                tail.deltaBytes += delta.length;
+            }
+        }
+        if (record == null) {
+            record = frame(payload(SNAPSHOT, now, lines.size(), deflate(encodeLines(lines))));
+            tail.snapshotBytes = record.length;
+            tail.deltaBytes = 0;
+        }
+        store.appendData(key(name), record);
+        if (tail.versions == 0) {
+            tail.oldestMillis = now;
+        }
+        tail.versions++;
+        tail.recorded = lines;
+        tail.recordedAt = now;
+        prune(name, tail);
+    }
+
+    /** Drops versions beyond the retention limits, with some slack so it is not done on every record. */
+    private void prune(String name, Tail tail) throws IOException {
+        Retention limits = retention;
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(limits.maxAgeDays());
+        boolean tooMany = tail.versions > limits.maxVersions() + Math.max(1, limits.maxVersions() / 10);
+        boolean tooOld = tail.oldestMillis < cutoff - TimeUnit.DAYS.toMillis(1);
+        if (!tooMany && !tooOld) {
+            return;
+        }
+        List<Record> records = read(name);
+        int first = Math.max(0, records.size() - limits.maxVersions());
+        while (first < records.size() - 1 && records.get(first).timeMillis() < cutoff) {
+            first++;
+        }
+        if (first > 0) {
+            // Later deltas apply to the same text as before, so they are kept as they are
+            Record oldest = records.get(first);
+            List<String> base = rebuild(records, first);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(frame(payload(SNAPSHOT, oldest.timeMillis(), base.size(), deflate(encodeLines(base)))));
+            for (int i = first + 1; i < records.size(); i++) {
+                Record record = records.get(i);
+                out.write(frame(payload(record.kind(), record.timeMillis(), record.lines(), record.body())));
+            }
+            store.writeData(key(name), out.toByteArray());
+        }
+        // Read the sizes and dates back from what is stored now
+        tails.remove(name);
+        Tail fresh = tail(name);
+        fresh.saved = tail.saved == tail.recorded ? fresh.recorded : tail.saved;
+        fresh.recordedAt = tail.recordedAt;
+    }
+
+    private Tail tail(String name) throws IOException {
+        Tail tail = tails.get(name);
+        if (tail == null) {
+            tail = new Tail();
+            List<Record> records = read(name);
+            if (!records.isEmpty()) {
+                tail.recorded = rebuild(records, records.size() - 1);
+                tail.saved = tail.recorded;
+                tail.recordedAt = records.get(records.size() - 1).timeMillis();
+                tail.versions = records.size();
+                tail.oldestMillis = records.get(0).timeMillis();
+                for (Record record : records) {
+                    if (record.kind() == SNAPSHOT) {
+                        tail.snapshotBytes = record.frameBytes();
+                        tail.deltaBytes = 0;
+                    } else {
+                        tail.deltaBytes += record.frameBytes();
+                    }
+                }
+            }
+            tails.put(name, tail);
+        }
+        return tail;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Storage format
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private static String key(String name) {
+        return "." + name + ".history";
+    }
+
+    // kind, time, line count, then the deflated body
+    private static byte[] payload(byte kind, long timeMillis, int lines, byte[] body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length + 13);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(kind);
+        out.writeLong(timeMillis);
+        out.writeInt(lines);
+        out.write(body);
+        return buffer.toByteArray();
+    }
+
+    // Framed like journal entries: length and CRC, so a torn append only loses itself
+    private static byte[] frame(byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length + FRAME_HEADER);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(payload.length);
+        out.writeInt((int) EditJournal.crc(payload));
+        out.write(payload);
+        return buffer.toByteArray();
+    }
+
+    /** The note's records, oldest first, up to the first damaged one. */
+    private List<Record> read(String name) throws IOException {
+        byte[] bytes = store.readData(key(name));
+        if (bytes == null) {
+            return Collections.emptyList();
+        }
+        List<Record> records = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int position = 0;
+        while (bytes.length - position >= FRAME_HEADER) {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 13 || length > bytes.length - position - FRAME_HEADER) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if ((int) EditJournal.crc(payload) != crc) {
+                break;
+            }
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload));
+            byte kind = fields.readByte();
+            long time = fields.readLong();
+            int lines = fields.readInt();
+            byte[] body = new byte[length - 13];
+            fields.readFully(body);
+            records.add(new Record(kind, time, lines, body, length + FRAME_HEADER));
+            position += length + FRAME_HEADER;
+        }
+        if (!records.isEmpty() && records.get(0).kind() != SNAPSHOT) {
+            throw new IOException("History of " + name + " does not start with a snapshot");
+        }
+        return records;
+    }
+
+    /** Where the version recorded at {@code timeMillis} is now, or -1 if it was pruned. */
+    private static int indexOf(List<Record> records, long timeMillis) {
+        for (int i = records.size() - 1; i >= 0; i--) {
+            if (records.get(i).timeMillis() == timeMillis) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The lines of version {@code number}: the nearest snapshot before it, then the deltas up to it. */
+    private static List<String> rebuild(List<Record> records, int number) throws IOException {
+        int start = number;
+        while (records.get(start).kind() != SNAPSHOT) {
+            start--;
+        }
+        List<String> lines = decodeLines(inflate(records.get(start).body()));
+        for (int i = start + 1; i <= number; i++) {
+            lines = applyDelta(lines, inflate(records.get(i).body()));
+        }
+        return lines;
+    }
+
+    private static byte[] encodeLines(List<String> lines) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            writeLine(out, line);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static List<String> decodeLines(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int count = in.readInt();
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(readLine(in));
+        }
+        return lines;
+    }
+
+    // Per block: where it starts in the old lines, how many it removes, then the lines it adds
+    private static byte[] encodeDelta(List<LineDiff.Hunk> hunks, List<String> lines) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(hunks.size());
+        for (LineDiff.Hunk hunk : hunks) {
+            out.writeInt(hunk.oldStart());
+            out.writeInt(hunk.removed());
+            out.writeInt(hunk.added());
+            for (int i = hunk.newStart(); i < hunk.newEnd(); i++) {
+                writeLine(out, lines.get(i));
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private static List<String> applyDelta(List<String> old, byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int hunks = in.readInt();
+        List<String> lines = new ArrayList<>(old.size());
+        int copied = 0;
+        for (int h = 0; h < hunks; h++) {
+            int start = in.readInt();
+            int removed = in.readInt();
+            int added = in.readInt();
+            if (start < copied || start + removed > old.size()) {
+                throw new IOException("History delta does not fit the version before it");
+            }
+            lines.addAll(old.subList(copied, start));
+            for (int i = 0; i < added; i++) {
+                lines.add(readLine(in));
+            }
+            copied = start + removed;
+        }
+        lines.addAll(old.subList(copied, old.size()));
+        return lines;
+    }
+
+    private static void writeLine(DataOutputStream out, String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated history record");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Worker
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private interface Query<T> {
+        T run() throws IOException;
+    }
+
+    private void execute(Task task) {
+        try {
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the last saves were recorded before close
+        }
+    }
+
+    private <T> void submit(Consumer<T> onEdt, Query<T> query) {
+        execute(() -> {
+            T result = null;
+            try {
+                result = query.run();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            T delivered = result;
+            SwingUtilities.invokeLater(() -> onEdt.accept(delivered));
+        });
+    }
+}
@@ -0,0 +1,485 @@
+package com.notesplus;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for notes on a single background writer thread.
+ *
+ * Edits are not saved by rewriting the note. They are appended as row-level
+ * entries to the note's {@link EditJournal} and fsynced, which costs about as
+ * much as the edit itself. Edits queued for the same note before the writer
+ * gets to it are appended in one go.
+ *
+ * The writer also compacts: once a journal passes {@link #COMPACT_BYTES} or
+ * {@link #COMPACT_AGE_MILLIS}, it is folded into the markdown file. The file
+ * goes to a temp file, is fsynced and is renamed over the note, so a crash
+ * leaves either the old or the new file, never a truncated one.
+ *
+ * Text for notes that are not open, such as captured HTTP traffic, is
+ * appended to the markdown file itself after any journal has been folded in,
+ * so the journal's row indices never have to account for it.
+ */
+class NotePersistenceService implements AutoCloseable {
+
+    static final long COMPACT_BYTES = 256L * 1024;
+    static final long COMPACT_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long IDLE_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Path directory;
+    // Insertion-ordered so notes are handled in the order they were first queued
+    private final Map<String, Work> pending = new LinkedHashMap<>();
+    // Notes with a live journal and when it was started; guarded by ioLock
+    private final Map<String, Long> journals = new HashMap<>();
+    // Notes whose last journaled batch left the editor's rows unsettled; guarded by ioLock
+    private final Set<String> unsettled = new HashSet<>();
+    // mtime each note file had right after the writer last rewrote it
+    private final Map<String, Long> writtenMtimes = new ConcurrentHashMap<>();
+    // Serializes file access between the writer and loads on the caller's thread
+    private final Object ioLock = new Object();
+    private final Thread writer;
+    private String writing = null;
+    private boolean closed = false;
+
+    private static final class Work {
+        final List<EditJournal.Entry> edits = new ArrayList<>();
+        final StringBuilder appended = new StringBuilder();
+        boolean compact = false;
+        boolean settled = true;
+        // When the oldest of the queued edits was queued
+        long queuedNanos;
+    }
+
+    NotePersistenceService(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::runWriter, "notes-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues row-level edits to be appended to the note's journal.
+     * {@code settled} tells whether the editor's rows after these edits are
+     * exactly what splitting the note's text gives (see
+     * {@link MarkdownEditorPanel#rowsSettled}). Replay re-splits the note, so
+     * a journal is only compacted automatically after a settled batch;
+     * otherwise later row indices would not line up with the compacted file.
+     * A {@code RESET} entry replaces the journal so far, e.g. after the note
+     * was changed outside Burp and the old journal no longer applies.
+     */
+    synchronized void appendEdits(String noteName, List<EditJournal.Entry> edits, boolean settled) {
+        checkOpen();
+        Work work = pending.computeIfAbsent(noteName, k -> new Work());
+        if (work.edits.isEmpty()) {
+            work.queuedNanos = System.nanoTime();
+        }
+        work.edits.addAll(edits);
+        work.settled = settled;
+        notifyAll();
+    }
+
+    /**
+     * Queues text to be added at the end of a note that is not open in the
+     * editor, separated from it by a blank line. Ignored if the note is gone
+     * by the time it is written.
+     */
+    synchronized void appendText(String noteName, String text) {
+        checkOpen();
+        Work work = pending.computeIfAbsent(noteName, k -> new Work());
+        if (work.appended.length() > 0) {
+            work.appended.append("\n\n");
+        }
+        work.appended.append(text);
+        notifyAll();
+    }
+
+    /** Queues folding the note's journal into its markdown file. */
+    synchronized void requestCompaction(String noteName) {
+        checkOpen();
+        pending.computeIfAbsent(noteName, k -> new Work()).compact = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the note's file if it can be read directly, i.e. nothing is
+     * queued for it and no journal is waiting to be replayed over it.
+     * Returns null if the note has to go through {@link #load}.
+     */
+    Path streamableFile(String noteName) {
+        synchronized (this) {
+            if (pending.containsKey(noteName) || noteName.equals(writing)) {
+                return null;
+            }
+        }
+        Path noteFile = noteFile(noteName);
+        synchronized (ioLock) {
+            return Files.exists(EditJournal.journalFor(noteFile)) ? null : noteFile;
+        }
+    }
+
+    /**
+     * Reads a note with its journaled edits and any work still queued for it
+     * applied. Queued work is applied from memory, so only a write of this
+     * very note already in flight is waited for, never the whole queue. If
+     * a journal had to be replayed (typically after a crash), compaction is
+     * queued. Does file I/O; not for the EDT.
+     */
+    String load(String noteName) throws IOException {
+        Path noteFile = noteFile(noteName);
+        while (true) {
+            Work queued;
+            List<EditJournal.Entry> queuedEdits;
+            String queuedText;
+            synchronized (this) {
+                while (noteName.equals(writing)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                queued = pending.get(noteName);
+                queuedEdits = queued == null ? List.of() : new ArrayList<>(queued.edits);
+                queuedText = queued == null ? "" : queued.appended.toString();
+            }
+
+            LineDocument rows = new LineDocument();
+            boolean replayed = false;
+            synchronized (ioLock) {
+                byte[] base = Files.readAllBytes(noteFile);
+                String content = new String(base, StandardCharsets.UTF_8);
+                rows.reset(LineDocument.splitLogicalRows(content));
+                EditJournal.Contents journal = EditJournal.read(noteFile, base);
+                if (journal != null && !journal.entries().isEmpty()) {
+                    if (EditJournal.replayInto(rows, journal.entries())) {
+                        journals.putIfAbsent(noteName, journal.createdAtMillis());
+                        replayed = true;
+                    } else {
+                        setAside(noteName);
+                        rows.reset(LineDocument.splitLogicalRows(content));
+                    }
+                }
+            }
+
+            synchronized (this) {
+                // The writer took the queued work, or more was queued, while the file was read
+                if (noteName.equals(writing) || pending.get(noteName) != queued || (queued != null
+                        && (queued.edits.size() != queuedEdits.size() || queued.appended.length() != queuedText.length()))) {
+                    continue;
+                }
+            }
+            // Edits that do not fit are set aside by the writer once it gets to them
+            EditJournal.replayInto(rows, queuedEdits);
+            String content = rows.toText();
+            if (!queuedText.isEmpty()) {
+                content = withAppended(content, queuedText);
+            }
+            if (replayed) {
+                requestCompaction(noteName);
+            }
+            return content;
+        }
+    }
+
+    /**
+     * Drops any queued work for the note, e.g. because it is being deleted,
+     * waits out a write of it already in flight, and removes its journal.
+     */
+    synchronized void discard(String noteName) {
+        pending.remove(noteName);
+        while (noteName.equals(writing)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (ioLock) {
+            journals.remove(noteName);
+            unsettled.remove(noteName);
+            writtenMtimes.remove(noteName);
+            try {
+                EditJournal.delete(noteFile(noteName));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The note file's mtime right after this service last compacted it, or -1.
+     * Lets callers tell their own saves apart from edits made outside Burp.
+     */
+    long lastWrittenMillis(String noteName) {
+        return writtenMtimes.getOrDefault(noteName, -1L);
+    }
+
+    /** Blocks until every piece of work queued so far has reached disk, or the timeout passes. */
+    synchronized boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!pending.isEmpty() || writing != null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /** Compacts every open journal, flushes, and stops the writer thread. */
+    @Override
+    public void close() {
+        List<String> journaled;
+        synchronized (ioLock) {
+            journaled = new ArrayList<>(journals.keySet());
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (String noteName : journaled) {
+                pending.computeIfAbsent(noteName, k -> new Work()).compact = true;
+            }
+            notifyAll();
+        }
+        try {
+            flush(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            String noteName;
+            Work work;
+            synchronized (this) {
+                if (pending.isEmpty() && !closed) {
+                    try {
+                        wait(IDLE_CHECK_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    queueAgedCompactions();
+                    continue;
+                }
+                Map.Entry<String, Work> next = pending.entrySet().iterator().next();
+                noteName = next.getKey();
+                work = next.getValue();
+                pending.remove(noteName);
+                writing = noteName;
+            }
+
+            try {
+                synchronized (ioLock) {
+                    process(noteName, work);
+                }
+                if (!work.edits.isEmpty()) {
+                    Diagnostics.SAVE_WRITE.recordSince(work.queuedNanos);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A failed batch must not stop the writer, or nothing is saved after it
+                e.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    writing = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void process(String noteName, Work work) throws IOException {
+        Path noteFile = noteFile(noteName);
+        List<EditJournal.Entry> edits = work.edits;
+        int reset = lastReset(edits);
+        if (reset >= 0) {
+            // The editor's rows replace everything journaled so far; start again against the file as it is now
+            EditJournal.delete(noteFile);
+            journals.remove(noteName);
+            edits = edits.subList(reset, edits.size());
+        }
+        if (!edits.isEmpty()) {
+            EditJournal.append(noteFile, edits);
+            journals.putIfAbsent(noteName, System.currentTimeMillis());
+            if (work.settled) {
+                unsettled.remove(noteName);
+            } else {
+                unsettled.add(noteName);
+            }
+        }
+        if (work.appended.length() > 0) {
+            appendToFile(noteName, work.appended.toString());
+        }
+        Long startedAt = journals.get(noteName);
+        boolean due = startedAt != null && !unsettled.contains(noteName)
+                && (EditJournal.size(noteFile) > COMPACT_BYTES
+                        || System.currentTimeMillis() - startedAt > COMPACT_AGE_MILLIS);
+        if (work.compact || due) {
+            compact(noteName);
+        }
+    }
+
+    private void compact(String noteName) throws IOException {
+        Path noteFile = noteFile(noteName);
+        if (Files.exists(noteFile)) {
+            byte[] base = Files.readAllBytes(noteFile);
+            EditJournal.Contents journal = EditJournal.read(noteFile, base);
+            if (journal != null && !journal.entries().isEmpty()) {
+                String content = EditJournal.replay(new String(base, StandardCharsets.UTF_8), journal.entries());
+                if (content != null) {
+                    writeAtomically(noteFile, content);
+                    writtenMtimes.put(noteName, Files.getLastModifiedTime(noteFile).toMillis());
+                } else {
+                    EditJournal.setAside(noteFile);
+                }
+            }
+        }
+        EditJournal.delete(noteFile);
+        journals.remove(noteName);
+        unsettled.remove(noteName);
+    }
+
+    private void appendToFile(String noteName, String text) throws IOException {
+        Path noteFile = noteFile(noteName);
+        if (!Files.exists(noteFile)) {
+            return;
+        }
+        if (journals.containsKey(noteName) || Files.exists(EditJournal.journalFor(noteFile))) {
+            compact(noteName);
+        }
+        try (FileChannel channel = FileChannel.open(noteFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            // Keep one blank line between the note and the new text
+            String separator = "";
+            if (size > 0) {
+                ByteBuffer tail = ByteBuffer.allocate((int) Math.min(2, size));
+                channel.read(tail, size - tail.capacity());
+                tail.flip();
+                int newlines = 0;
+                for (int i = tail.limit() - 1; i >= 0 && tail.get(i) == '\n'; i--) {
+                    newlines++;
+                }
+                separator = "\n".repeat(2 - newlines);
+            }
+            ByteBuffer bytes = ByteBuffer.wrap((separator + text).getBytes(StandardCharsets.UTF_8));
+            long position = size;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            channel.force(true);
+        }
+        writtenMtimes.put(noteName, Files.getLastModifiedTime(noteFile).toMillis());
+    }
+
+    // Called with the monitor held, when the writer has been idle for a while
+    private void queueAgedCompactions() {
+        long now = System.currentTimeMillis();
+        synchronized (ioLock) {
+            for (Map.Entry<String, Long> journal : journals.entrySet()) {
+                if (now - journal.getValue() > COMPACT_AGE_MILLIS && !unsettled.contains(journal.getKey())) {
+                    pending.computeIfAbsent(journal.getKey(), k -> new Work()).compact = true;
+                }
+            }
+        }
+    }
+
+    // The text as appendToFile would leave it, with one blank line between the note and the new text
+    private static String withAppended(String content, String text) {
+        if (content.isEmpty()) {
+            return text;
+        }
+        int newlines = 0;
+        for (int i = content.length() - 1; i >= Math.max(0, content.length() - 2) && content.charAt(i) == '\n'; i--) {
+            newlines++;
+        }
+        return content + "\n".repeat(2 - newlines) + text;
+    }
+
+    private static int lastReset(List<EditJournal.Entry> edits) {
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            if (edits.get(i).type() == LineDocument.ChangeType.RESET) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Called with ioLock held, when the journal cannot be replayed over the note
+    private void setAside(String noteName) throws IOException {
+        EditJournal.setAside(noteFile(noteName));
+        journals.remove(noteName);
+        unsettled.remove(noteName);
+    }
+
+    private Path noteFile(String noteName) {
+        return directory.resolve(noteName + ".md");
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Persistence service is closed");
+        }
+    }
+
+    static void writeAtomically(Path target, String content) throws IOException {
+        writeAtomically(target, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        ByteBuffer bytes = ByteBuffer.wrap(content);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    /** Makes the rename itself durable where the platform allows opening a directory (not on Windows). */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Best effort only
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.notesplus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where notes live. {@link FileNoteStore} keeps them as markdown files in a
+ * directory; {@link ProjectNoteStore} keeps them in the Burp project file.
+ *
+ * Either way the store keeps an index of names, sizes and modification
+ * times that is cheap to list, and note text is only read when a note is
+ * opened or indexed. Changes are reported to {@link NoteCatalog.Listener}s
+ * on the EDT.
+ */
+interface NoteStore extends AutoCloseable {
+
+    void addListener(NoteCatalog.Listener listener);
+
+    /** Starts following changes; listeners registered before this see every delta. */
+    void start();
+
+    /** Note names in sidebar order. */
+    List<String> sortedNames();
+
+    /** Index entries of every note, in no particular order. */
+    List<NoteCatalog.Entry> entries();
+
+    /** Size of the stored note, or 0 if there is no such note. */
+    long size(String name);
+
+    /** When the stored note last changed, or -1 if there is no such note. */
+    long modifiedMillis(String name);
+
+    /**
+     * {@link #modifiedMillis} as of this store's own last write of the note,
+     * or -1. Lets callers tell their own saves apart from outside changes.
+     */
+    long lastWrittenMillis(String name);
+
+    /** Creates an empty note; returns false if it already exists. */
+    boolean create(String name) throws IOException;
+
+    /** Deletes a note and drops any of its work still queued. */
+    void delete(String name) throws IOException;
+
+    /** The note's full text, including every edit saved so far. */
+    String load(String name) throws IOException;
+
+    /**
+     * Opens the stored text for reading without side effects, for indexing.
+     * It may lag behind {@link #load} by edits not yet folded in.
+     * Throws {@link java.nio.file.NoSuchFileException} if the note is gone.
+     */
+    BufferedReader read(String name) throws IOException;
+
+    /**
+     * A file holding the note's current text that can be streamed from,
+     * or null if the note has to go through {@link #load}.
+     */
+    Path streamableFile(String name);
+
+    /** Queues row-level edits made in the editor (see {@link NotePersistenceService#appendEdits}). */
+    void appendEdits(String name, List<EditJournal.Entry> edits, boolean settled);
+
+    /** Queues text to be added at the end of a note that is not open in the editor. */
+    void appendText(String name, String text);
+
+    /** Extension data kept next to the notes, such as the saved search index; null if absent. */
+    byte[] readData(String key) throws IOException;
+
+    void writeData(String key, byte[] data) throws IOException;
+
+    /** Adds bytes at the end of a data item, creating it if needed. */
+    void appendData(String key, byte[] data) throws IOException;
+
+    /** Removes a data item; nothing happens if there is none. */
+    void deleteData(String key) throws IOException;
+
+    /** Blocks until everything queued so far has been stored. */
+    void flush();
+
+    /** Writes everything still queued and stops background work. */
+    @Override
+    void close();
+}
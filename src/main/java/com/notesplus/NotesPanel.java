@@ -1,13 +1,21 @@
 package com.notesplus;
 
 import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.persistence.Persistence;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NotesPanel extends JPanel {
 
@@ -15,14 +23,72 @@ public class NotesPanel extends JPanel {
     private JList<String> notesList;
     private DefaultListModel<String> notesModel;
     private final Path notesDirectory;
+    // Where notes are read from and saved to; chosen once per load of the extension
+    private final NoteStore store;
+    private final Persistence burpPersistence;
+    private final SearchIndex searchIndex;
+    private final NoteHistory history;
+    private final HistoryDialog historyDialog;
+    private final QuickSwitchIndex quickSwitchIndex = new QuickSwitchIndex();
+    private final QuickSwitcher quickSwitcher;
+    // Recently shown notes, so switching back only swaps the view
+    private final DocumentCache documentCache = new DocumentCache(8, 64L * 1024 * 1024);
+    // Notes at least this big are streamed into the editor instead of read whole
+    private static final long STREAM_THRESHOLD_BYTES = 1024 * 1024;
+    // Preference naming the store to use: STORE_PROJECT, or anything else for the notes directory
+    private static final String STORE_PREFERENCE = "notesplus.store";
+    private static final String STORE_PROJECT = "project";
+    // Version history retention, as integers
+    private static final String HISTORY_VERSIONS_PREFERENCE = "notesplus.history.versions";
+    private static final String HISTORY_DAYS_PREFERENCE = "notesplus.history.days";
+    private static final int DEFAULT_HISTORY_VERSIONS = 200;
+    private static final int DEFAULT_HISTORY_DAYS = 30;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notes-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notes-prefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private JTextField searchField;
+    private DefaultListModel<SearchIndex.Hit> searchModel;
+    private JList<SearchIndex.Hit> searchResults;
+    private JPanel listCards;
+    private javax.swing.Timer searchTimer;
     private String currentNote = null;
-    private javax.swing.Timer autoSaveTimer;
+    // Row-level edits made since the last save, in the order they happened
+    private final List<EditJournal.Entry> unsavedEdits = new ArrayList<>();
+    // True if the editor may hold edits the note's file lacks: any made since it was read, or a cached copy
+    private boolean editedSinceOpened = false;
+    private final SaveScheduler saveScheduler = new SaveScheduler();
+    private final SaveScheduler.Target autoSave = saveScheduler.register(this::saveCurrentNote);
+    // Captured HTTP traffic on its way into notes, batched off Burp's threads and the EDT
+    private final CaptureQueue captureQueue;
+    private final HttpCaptureHandler captureHandler;
+    private final Diagnostics diagnostics;
+    private JButton captureButton;
+    // Line of a search hit to jump to once the open note has loaded, or -1
+    private int revealAfterLoad = -1;
+    // Captures for the note being streamed in, added once it becomes editable
+    private final StringBuilder deferredCaptures = new StringBuilder();
 
     public NotesPanel(MontoyaApi api) {
         this.setLayout(new BorderLayout());
 
-        // Initialize notes directory
+        // Initialize notes directory and the store the notes live in
         this.notesDirectory = initializeNotesDirectory();
+        this.burpPersistence = api.persistence();
+        this.store = openStore();
+        this.searchIndex = new SearchIndex(store);
+        this.history = new NoteHistory(store, historyRetention());
+        this.captureQueue = new CaptureQueue(notesDirectory.resolve(".captures"), this::appendCaptured);
+        this.captureHandler = new HttpCaptureHandler(captureQueue);
+        this.diagnostics = new Diagnostics(api.logging());
+        this.quickSwitcher = new QuickSwitcher(quickSwitchIndex, name -> notesList.setSelectedValue(name, true));
 
         // Initialize notes list components before sidebar creation
         this.notesModel = new DefaultListModel<>();
@@ -38,23 +104,73 @@ public class NotesPanel extends JPanel {
         // Create sidebar
         JPanel sidebarPanel = createSidebar();
 
-        // Create editor with auto-save callback
-        this.editorPanel = new MarkdownEditorPanel(content -> {
-            // Auto-save on content change
-            if (currentNote != null && !currentNote.isEmpty()) {
-                resetAutoSaveTimer();
-            }
-        });
+        // Create editor with auto-save callback; edits arrive as line changes, not the full text
+        this.editorPanel = new MarkdownEditorPanel(this::onDocumentChanged);
+        this.historyDialog = new HistoryDialog(history, () -> editorPanel.getDocument().snapshot(), this::restoreVersion);
+
+        // Editor with the outline of its headings on the right
+        JPanel editorArea = new JPanel(new BorderLayout());
+        editorArea.add(editorPanel.getComponent(), BorderLayout.CENTER);
+        editorArea.add(new OutlinePanel(editorPanel), BorderLayout.EAST);
 
-        // Split pane: sidebar (left) | editor (right)
-        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sidebarPanel, editorPanel.getComponent());
+        // Split pane: sidebar (left) | editor and outline (right)
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sidebarPanel, editorArea);
         splitPane.setDividerLocation(200);
         splitPane.setResizeWeight(0.15);
 
         this.add(splitPane, BorderLayout.CENTER);
 
-        // Load initial notes list
+        // Load initial notes list from the store's index, then follow changes
         loadNotesList();
+        store.addListener(new NoteCatalog.Listener() {
+            @Override
+            public void noteAdded(NoteCatalog.Entry entry) {
+                insertSorted(entry.name());
+                quickSwitchIndex.add(entry.name());
+                searchIndex.indexFile(entry.name(), entry.size(), entry.modifiedMillis());
+            }
+
+            @Override
+            public void noteRemoved(String name) {
+                documentCache.invalidate(name);
+                notesModel.removeElement(name);
+                quickSwitchIndex.remove(name);
+                searchIndex.removeNote(name);
+            }
+
+            @Override
+            public void noteChanged(NoteCatalog.Entry entry) {
+                // The list only shows names; the search index needs the new text
+                searchIndex.indexFile(entry.name(), entry.size(), entry.modifiedMillis());
+                if (entry.name().equals(currentNote) && entry.modifiedMillis() != store.lastWrittenMillis(currentNote)) {
+                    noteChangedOutside();
+                }
+            }
+        });
+        // Restores the saved index and re-indexes only notes that changed since
+        searchIndex.start(store.entries());
+        store.start();
+
+        // Ctrl+P (Cmd+P on macOS) opens the quick switcher from anywhere in the tab;
+        // a headless toolkit (benchmarks) has no menu shortcut key, so it gets Ctrl
+        int shortcut = GraphicsEnvironment.isHeadless()
+                ? java.awt.event.InputEvent.CTRL_DOWN_MASK : Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        getInputMap(WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_P, shortcut), "quickOpen");
+        getActionMap().put("quickOpen", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                quickSwitcher.show(NotesPanel.this);
+            }
+        });
+        // Ctrl+Shift+D: latency diagnostics, deliberately not on any menu
+        getInputMap(WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_D,
+                shortcut | java.awt.event.InputEvent.SHIFT_DOWN_MASK), "diagnostics");
+        getActionMap().put("diagnostics", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                diagnostics.showView(NotesPanel.this);
+            }
+        });
     }
 
     private JPanel createSidebar() {
@@ -63,17 +179,28 @@ public class NotesPanel extends JPanel {
         sidebar.setBorder(new EmptyBorder(10, 10, 10, 10));
 
         // Header
-        JLabel header = new JLabel("Notes");
+        JLabel header = new JLabel(store instanceof ProjectNoteStore ? "Notes (project)" : "Notes");
         header.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        header.setToolTipText("Right-click the list to choose where notes are stored");
         sidebar.add(header, BorderLayout.NORTH);
+        notesList.setComponentPopupMenu(createStoreMenu());
 
         // Notes list (already initialized in constructor)
         JScrollPane scrollPane = new JScrollPane(notesList);
         scrollPane.setBorder(new EmptyBorder(10, 0, 10, 0));
 
+        // Search results replace the notes list while there is a query
+        JScrollPane resultsPane = new JScrollPane(createSearchResults());
+        resultsPane.setBorder(new EmptyBorder(10, 0, 10, 0));
+        listCards = new JPanel(new CardLayout());
+        listCards.setOpaque(false);
+        listCards.add(scrollPane, "notes");
+        listCards.add(resultsPane, "results");
+
         JPanel centerPanel = new JPanel(new BorderLayout());
         centerPanel.setOpaque(false);
-        centerPanel.add(scrollPane, BorderLayout.CENTER);
+        centerPanel.add(createSearchField(), BorderLayout.NORTH);
+        centerPanel.add(listCards, BorderLayout.CENTER);
         sidebar.add(centerPanel, BorderLayout.CENTER);
 
         // Footer buttons
@@ -88,13 +215,136 @@ public class NotesPanel extends JPanel {
         deleteButton.setFont(new Font("Segoe UI", Font.PLAIN, 11));
         deleteButton.addActionListener(e -> deleteCurrentNote());
 
+        captureButton = new JButton("Log HTTP");
+        captureButton.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        captureButton.setToolTipText("Log matching Burp traffic into a note");
+        captureButton.addActionListener(e -> showCaptureDialog());
+
+        JButton historyButton = new JButton("History");
+        historyButton.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        historyButton.setToolTipText("Browse and restore earlier versions of this note");
+        historyButton.addActionListener(e -> showHistory());
+
         buttonPanel.add(newButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(historyButton);
+        buttonPanel.add(captureButton);
         sidebar.add(buttonPanel, BorderLayout.SOUTH);
 
         return sidebar;
     }
 
+    private JTextField createSearchField() {
+        searchField = new JTextField();
+        searchField.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        searchField.setToolTipText("Search all notes (Esc to clear)");
+        searchField.putClientProperty("JTextField.placeholderText", "Search notes");
+
+        // Queries run once typing pauses briefly, on the index's search thread
+        searchTimer = new javax.swing.Timer(150, e -> runSearch());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+        searchField.addKeyListener(new java.awt.event.KeyAdapter() {
+            @Override
+            public void keyPressed(java.awt.event.KeyEvent e) {
+                if (e.getKeyCode() == java.awt.event.KeyEvent.VK_ESCAPE) {
+                    searchField.setText("");
+                } else if (e.getKeyCode() == java.awt.event.KeyEvent.VK_ENTER && !searchModel.isEmpty()) {
+                    openSearchHit(searchModel.get(0));
+                } else if (e.getKeyCode() == java.awt.event.KeyEvent.VK_DOWN && !searchModel.isEmpty()) {
+                    searchResults.setSelectedIndex(0);
+                    searchResults.requestFocusInWindow();
+                }
+            }
+        });
+        return searchField;
+    }
+
+    private JList<SearchIndex.Hit> createSearchResults() {
+        searchModel = new DefaultListModel<>();
+        searchResults = new JList<>(searchModel);
+        searchResults.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        searchResults.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                SearchIndex.Hit hit = (SearchIndex.Hit) value;
+                setText("<html><b>" + escapeHtml(hit.note()) + "</b> :" + (hit.line() + 1)
+                        + "<br><font color='#666666'>" + escapeHtml(hit.snippet()) + "</font></html>");
+                return this;
+            }
+        });
+        searchResults.addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                SearchIndex.Hit hit = searchResults.getSelectedValue();
+                if (hit != null) {
+                    openSearchHit(hit);
+                }
+            }
+        });
+        searchResults.addKeyListener(new java.awt.event.KeyAdapter() {
+            @Override
+            public void keyPressed(java.awt.event.KeyEvent e) {
+                SearchIndex.Hit hit = searchResults.getSelectedValue();
+                if (e.getKeyCode() == java.awt.event.KeyEvent.VK_ENTER && hit != null) {
+                    openSearchHit(hit);
+                }
+            }
+        });
+        return searchResults;
+    }
+
+    private void runSearch() {
+        String query = searchField.getText().trim();
+        CardLayout cards = (CardLayout) listCards.getLayout();
+        if (query.isEmpty()) {
+            searchModel.clear();
+            cards.show(listCards, "notes");
+            return;
+        }
+        cards.show(listCards, "results");
+        searchIndex.search(query, 50, hits -> {
+            searchModel.clear();
+            searchModel.addAll(hits);
+        });
+    }
+
+    private void openSearchHit(SearchIndex.Hit hit) {
+        if (!hit.note().equals(currentNote)) {
+            notesList.setSelectedValue(hit.note(), true);
+        }
+        if (!hit.note().equals(currentNote)) {
+            return;
+        }
+        if (editorPanel.isLoading()) {
+            // The note is still being read; jump once it is shown
+            revealAfterLoad = hit.line();
+        } else {
+            editorPanel.revealLine(hit.line());
+        }
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     private Path initializeNotesDirectory() {
         Path notesDir = Paths.get(System.getProperty("user.home"), ".burp_notes_plus");
         try {
@@ -105,37 +355,272 @@ public class NotesPanel extends JPanel {
         return notesDir;
     }
 
+    /** The project store if the preference asks for it, else the notes directory. */
+    private NoteStore openStore() {
+        if (STORE_PROJECT.equals(burpPersistence.preferences().getString(STORE_PREFERENCE))) {
+            return new ProjectNoteStore(burpPersistence.extensionData());
+        }
+        return new FileNoteStore(notesDirectory);
+    }
+
+    private JPopupMenu createStoreMenu() {
+        JPopupMenu menu = new JPopupMenu();
+        JCheckBoxMenuItem inProject = new JCheckBoxMenuItem("Keep notes in the Burp project",
+                store instanceof ProjectNoteStore);
+        inProject.addActionListener(e -> {
+            burpPersistence.preferences().setString(STORE_PREFERENCE,
+                    inProject.isSelected() ? STORE_PROJECT : "directory");
+            JOptionPane.showMessageDialog(this, "Reload the extension to switch. Existing notes are not moved.\n"
+                    + "Notes in the notes directory: " + notesDirectory, "Info", JOptionPane.INFORMATION_MESSAGE);
+        });
+        menu.add(inProject);
+        JMenuItem retention = new JMenuItem("Version history retention...");
+        retention.addActionListener(e -> showRetentionDialog());
+        menu.add(retention);
+        return menu;
+    }
+
+    private NoteHistory.Retention historyRetention() {
+        Integer versions = burpPersistence.preferences().getInteger(HISTORY_VERSIONS_PREFERENCE);
+        Integer days = burpPersistence.preferences().getInteger(HISTORY_DAYS_PREFERENCE);
+        return new NoteHistory.Retention(versions == null ? DEFAULT_HISTORY_VERSIONS : versions,
+                days == null ? DEFAULT_HISTORY_DAYS : days);
+    }
+
+    private void showRetentionDialog() {
+        NoteHistory.Retention current = historyRetention();
+        JSpinner versions = new JSpinner(new SpinnerNumberModel(current.maxVersions(), 1, 10_000, 10));
+        JSpinner days = new JSpinner(new SpinnerNumberModel(current.maxAgeDays(), 1, 3650, 1));
+        JPanel form = new JPanel(new GridLayout(2, 2, 8, 6));
+        form.add(new JLabel("Versions kept per note:"));
+        form.add(versions);
+        form.add(new JLabel("Days kept:"));
+        form.add(days);
+        int result = JOptionPane.showConfirmDialog(this, form, "Version history", JOptionPane.OK_CANCEL_OPTION);
+        if (result == JOptionPane.OK_OPTION) {
+            burpPersistence.preferences().setInteger(HISTORY_VERSIONS_PREFERENCE, (Integer) versions.getValue());
+            burpPersistence.preferences().setInteger(HISTORY_DAYS_PREFERENCE, (Integer) days.getValue());
+            history.setRetention(historyRetention());
+        }
+    }
+
+    private void showHistory() {
+        if (currentNote == null) {
+            JOptionPane.showMessageDialog(this, "No note selected", "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        // Make the latest edits a version, so they can be compared and restored against
+        editorPanel.commitEdits();
+        saveCurrentNote();
+        history.checkpoint(currentNote);
+        historyDialog.show(this, currentNote);
+    }
+
+    /**
+     * Replaces the open note's text with an earlier version. The replacement
+     * is an edit like any other, so Ctrl+Z takes it back, and the text it
+     * replaces is kept as a version first.
+     */
+    private void restoreVersion(String note, String text) {
+        if (!note.equals(currentNote) || editorPanel.isLoading()) {
+            return;
+        }
+        editorPanel.commitEdits();
+        saveCurrentNote();
+        history.checkpoint(note);
+        editorPanel.replaceAll(text);
+        saveCurrentNote();
+        history.checkpoint(note);
+    }
+
     private void loadNotesList() {
         notesModel.clear();
-        try {
-            Files.list(notesDirectory)
-                    .filter(Files::isRegularFile)
-                    .filter(p -> p.toString().endsWith(".md"))
-                    .map(p -> p.getFileName().toString().replaceAll("\\.md$", ""))
-                    .sorted()
-                    .forEach(notesModel::addElement);
-        } catch (IOException e) {
-            e.printStackTrace();
+        // addAll fires one interval event instead of one per note
+        List<String> names = store.sortedNames();
+        notesModel.addAll(names);
+        for (String name : names) {
+            quickSwitchIndex.add(name);
+        }
+    }
+
+    private void insertSorted(String name) {
+        int lo = 0;
+        int hi = notesModel.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = notesModel.get(mid).compareTo(name);
+            if (cmp == 0) {
+                return;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
         }
+        notesModel.add(lo, name);
     }
 
     private void onNoteSelected() {
         String selectedNote = notesList.getSelectedValue();
         if (selectedNote != null && !selectedNote.equals(currentNote)) {
-            // Save current note if any
+            // Save current note if any, and keep its rows and layout for switching back
             if (currentNote != null) {
+                if (deferredCaptures.length() > 0) {
+                    // The note never finished loading; its captures go to the store instead
+                    store.appendText(currentNote, deferredCaptures.toString());
+                    deferredCaptures.setLength(0);
+                }
+                // Settle the rows first so the cached copy and the journal agree with the file
+                editorPanel.commitEdits();
                 saveCurrentNote();
+                history.checkpoint(currentNote);
+                historyDialog.closeFor(currentNote);
+                // A note still streaming in is incomplete and must not be cached
+                if (!editorPanel.isLoading()) {
+                    documentCache.put(currentNote, store.modifiedMillis(currentNote), editorPanel.currentDocument());
+                }
             }
 
             // Load selected note
             currentNote = selectedNote;
-            Path noteFile = notesDirectory.resolve(selectedNote + ".md");
+            revealAfterLoad = -1;
+            unsavedEdits.clear();
+            autoSave.clear();
+            openNote(selectedNote);
+            // Keeps the note as it was before this session's edits if it has no history yet
+            history.opened(selectedNote);
+            prefetchNeighbours(notesList.getSelectedIndex());
+        }
+    }
+
+    /**
+     * Shows a note: the cached rows if they are still current, else the stored
+     * note, which is read on the loader thread. The editor shows the note as
+     * loading, and cannot be edited, until it arrives.
+     */
+    private void openNote(String name) {
+        MarkdownEditorPanel.OpenDocument cached = documentCache.get(name,
+                store.modifiedMillis(name), store.lastWrittenMillis(name));
+        // A cached copy may hold edits whose journal has not been folded into the file yet
+        editedSinceOpened = cached != null;
+        if (cached != null) {
+            editorPanel.showDocument(cached);
+            return;
+        }
+        long start = System.nanoTime();
+        long generation = editorPanel.beginLoading();
+        loader.execute(() -> {
+            // Another note was opened while this one waited its turn
+            if (!editorPanel.isCurrent(generation)) {
+                return;
+            }
             try {
-                String content = new String(Files.readAllBytes(noteFile), StandardCharsets.UTF_8);
-                editorPanel.setContent(content);
+                Path streamable = store.size(name) >= STREAM_THRESHOLD_BYTES ? store.streamableFile(name) : null;
+                if (streamable != null) {
+                    streamNote(streamable, generation);
+                    return;
+                }
+                // Includes journaled and queued edits, replaying them if Burp died before compaction
+                MarkdownEditorPanel.OpenDocument prepared = MarkdownEditorPanel.prepareDocument(store.load(name));
+                SwingUtilities.invokeLater(() -> {
+                    if (editorPanel.showLoaded(generation, prepared)) {
+                        Diagnostics.NOTE_LOAD.recordSince(start);
+                        revealPendingLine();
+                        appendDeferredCaptures();
+                    }
+                });
             } catch (IOException e) {
                 e.printStackTrace();
+                // The note stays empty and read-only, so no edit can be saved over it
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "Error loading note: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
             }
+        });
+    }
+
+    /**
+     * The open note's file was rewritten outside Burp, so its journal no
+     * longer applies and later row edits would land on the wrong rows. A note
+     * without edits of its own is read again; otherwise the editor's rows are
+     * saved whole over the outside version, so nothing on screen is lost.
+     */
+    private void noteChangedOutside() {
+        if (editorPanel.isLoading() || !editedSinceOpened) {
+            unsavedEdits.clear();
+            autoSave.clear();
+            openNote(currentNote);
+            return;
+        }
+        editorPanel.commitEdits();
+        unsavedEdits.clear();
+        unsavedEdits.add(EditJournal.Entry.reset(editorPanel.getDocument().snapshot()));
+        saveCurrentNote();
+    }
+
+    /** Reads a large note and feeds it to the editor in batches; runs on the loader thread. */
+    private void streamNote(Path file, long generation) {
+        AtomicBoolean stale = new AtomicBoolean(false);
+        try {
+            // Small first batch so the first screen appears right away
+            StreamingNoteReader.read(file, 200, 5000, batch -> SwingUtilities.invokeLater(() -> {
+                if (!editorPanel.appendLoadedRows(generation, batch)) {
+                    stale.set(true);
+                }
+            }), stale::get);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            SwingUtilities.invokeLater(() -> {
+                editorPanel.finishLoading(generation);
+                if (editorPanel.isCurrent(generation)) {
+                    revealPendingLine();
+                }
+                appendDeferredCaptures();
+            });
+        }
+    }
+
+    // Jumps to the search hit the open note was opened for, once it has finished loading
+    private void revealPendingLine() {
+        if (revealAfterLoad >= 0 && !editorPanel.isLoading()) {
+            int line = revealAfterLoad;
+            revealAfterLoad = -1;
+            editorPanel.revealLine(line);
+        }
+    }
+
+    // Captures that arrived for the open note while it was loading, once it can be edited
+    private void appendDeferredCaptures() {
+        if (!editorPanel.isLoading() && deferredCaptures.length() > 0) {
+            editorPanel.appendText(deferredCaptures.toString());
+            deferredCaptures.setLength(0);
+        }
+    }
+
+    /** Prepares the notes above and below the selection in the background, ready to be shown. */
+    private void prefetchNeighbours(int index) {
+        for (int neighbour : new int[] { index + 1, index - 1 }) {
+            if (neighbour < 0 || neighbour >= notesModel.size()) {
+                continue;
+            }
+            String name = notesModel.get(neighbour);
+            if (name.equals(currentNote) || documentCache.contains(name)) {
+                continue;
+            }
+            prefetcher.execute(() -> {
+                try {
+                    long modified = store.modifiedMillis(name);
+                    MarkdownEditorPanel.OpenDocument prepared =
+                            MarkdownEditorPanel.prepareDocument(store.load(name));
+                    SwingUtilities.invokeLater(() -> {
+                        if (!name.equals(currentNote) && !documentCache.contains(name)) {
+                            documentCache.put(name, modified, prepared);
+                        }
+                    });
+                } catch (IOException | IllegalStateException e) {
+                    // Deleted or shutting down; nothing to prefetch
+                }
+            });
         }
     }
 
@@ -143,13 +628,8 @@ public class NotesPanel extends JPanel {
         String noteName = JOptionPane.showInputDialog(this, "Note name:", "Untitled");
         if (noteName != null && !noteName.trim().isEmpty()) {
             noteName = noteName.trim().replaceAll("[^a-zA-Z0-9_\\-]", "_");
-            Path noteFile = notesDirectory.resolve(noteName + ".md");
-
             try {
-                if (!Files.exists(noteFile)) {
-                    Files.write(noteFile, "".getBytes(StandardCharsets.UTF_8));
-                    loadNotesList();
-
+                if (store.create(noteName)) {
                     // Select the new note
                     int index = notesModel.indexOf(noteName);
                     if (index >= 0) {
@@ -170,36 +650,190 @@ public class NotesPanel extends JPanel {
 
         int result = JOptionPane.showConfirmDialog(this, "Delete note: " + currentNote + "?", "Confirm", JOptionPane.YES_NO_OPTION);
         if (result == JOptionPane.YES_OPTION) {
-            Path noteFile = notesDirectory.resolve(currentNote + ".md");
             try {
-                Files.delete(noteFile);
+                documentCache.invalidate(currentNote);
+                store.delete(currentNote);
+                history.deleted(currentNote);
+                historyDialog.closeFor(currentNote);
                 currentNote = null;
+                unsavedEdits.clear();
+                autoSave.clear();
                 editorPanel.setContent("");
-                loadNotesList();
             } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "Error deleting note: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
+    private void onDocumentChanged(LineDocument.Change change) {
+        // Loading a note replaces the document but is not an edit
+        if (change.type() == LineDocument.ChangeType.RESET || currentNote == null || currentNote.isEmpty()) {
+            return;
+        }
+        editedSinceOpened = true;
+        LineDocument document = editorPanel.getDocument();
+        switch (change.type()) {
+            case UPDATE -> {
+                EditJournal.Entry update = EditJournal.Entry.update(change.index(), document.get(change.index()));
+                int last = unsavedEdits.size() - 1;
+                // Typing in one row journals only its final text
+                if (last >= 0 && unsavedEdits.get(last).type() == LineDocument.ChangeType.UPDATE
+                        && unsavedEdits.get(last).index() == change.index()) {
+                    unsavedEdits.set(last, update);
+                } else {
+                    unsavedEdits.add(update);
+                }
+            }
+            case INSERT -> {
+                List<String> texts = new ArrayList<>(change.count());
+                for (int i = 0; i < change.count(); i++) {
+                    texts.add(document.get(change.index() + i));
+                }
+                unsavedEdits.add(EditJournal.Entry.insert(change.index(), texts));
+            }
+            case REMOVE -> unsavedEdits.add(EditJournal.Entry.remove(change.index(), change.count()));
+            default -> {
+            }
+        }
+        autoSave.changed(document.size());
+    }
+
+    /** The HTTP handler that logs traffic matching the rule set in the capture dialog. */
+    HttpCaptureHandler captureHandler() {
+        return captureHandler;
+    }
+
+    /** Context menu items that add selected requests to a note. */
+    CaptureMenuProvider captureMenu() {
+        return new CaptureMenuProvider(captureQueue, () -> currentNote, () -> store.sortedNames(), this);
+    }
+
+    /**
+     * Adds a batch of captured traffic to a note. The open note gets it through
+     * the editor, as one change that is journaled like any edit; any other note
+     * gets it appended by the store.
+     */
+    private void appendCaptured(String note, String markdown) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> appendCaptured(note, markdown));
+            return;
+        }
+        if (note.equals(currentNote)) {
+            if (editorPanel.isLoading()) {
+                if (deferredCaptures.length() > 0) {
+                    deferredCaptures.append("\n\n");
+                }
+                deferredCaptures.append(markdown);
+            } else {
+                editorPanel.appendText(markdown);
+            }
+            return;
+        }
+        // The cached rows no longer match the stored note
+        documentCache.invalidate(note);
+        try {
+            store.appendText(note, markdown);
+        } catch (IllegalStateException e) {
+            // Unloading; the store is already closed
+            e.printStackTrace();
+        }
+    }
+
+    private void showCaptureDialog() {
+        List<String> names = store.sortedNames();
+        if (names.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Create a note first", "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        HttpCaptureHandler.Rule rule = captureHandler.rule();
+        JComboBox<String> noteBox = new JComboBox<>(names.toArray(new String[0]));
+        noteBox.setSelectedItem(rule != null ? rule.note() : currentNote);
+        JTextField urlField = new JTextField(rule != null && rule.urlPattern() != null
+                ? rule.urlPattern().pattern() : "", 24);
+        JCheckBox scopeBox = new JCheckBox("Only in-scope requests", rule == null || rule.inScopeOnly());
+
+        JPanel form = new JPanel(new GridLayout(0, 1, 0, 4));
+        form.add(new JLabel("Note:"));
+        form.add(noteBox);
+        form.add(new JLabel("URL regex (empty for all):"));
+        form.add(urlField);
+        form.add(scopeBox);
+
+        Object[] options = rule == null ? new Object[] { "Start", "Cancel" } : new Object[] { "Update", "Stop", "Cancel" };
+        int choice = JOptionPane.showOptionDialog(this, form, "Log HTTP traffic", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (choice < 0 || options[choice].equals("Cancel")) {
+            return;
+        }
+        if (options[choice].equals("Stop")) {
+            captureHandler.setRule(null);
+        } else {
+            java.util.regex.Pattern urlPattern = null;
+            if (!urlField.getText().isBlank()) {
+                try {
+                    urlPattern = java.util.regex.Pattern.compile(urlField.getText().trim());
+                } catch (java.util.regex.PatternSyntaxException e) {
+                    JOptionPane.showMessageDialog(this, "Invalid URL regex: " + e.getDescription(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            captureHandler.setRule(new HttpCaptureHandler.Rule((String) noteBox.getSelectedItem(), urlPattern,
+                    scopeBox.isSelected()));
+        }
+        captureButton.setText(captureHandler.rule() == null ? "Log HTTP" : "Logging...");
+    }
+
     private void saveCurrentNote() {
+        autoSave.clear();
         if (currentNote != null && !currentNote.isEmpty()) {
-            Path noteFile = notesDirectory.resolve(currentNote + ".md");
-            try {
-                String content = editorPanel.getContent();
-                Files.write(noteFile, content.getBytes(StandardCharsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
+            long start = System.nanoTime();
+            // Pull in keystrokes the editor has not reported yet
+            editorPanel.flushEditingRow();
+            if (!unsavedEdits.isEmpty()) {
+                // Only the changed rows are journaled; the writer folds them into the file later
+                store.appendEdits(currentNote, new ArrayList<>(unsavedEdits), editorPanel.rowsSettled());
+                unsavedEdits.clear();
+                // The stored note may lag behind the saved edits, so index what was just saved
+                List<String> rows = editorPanel.getDocument().snapshot();
+                searchIndex.indexRows(currentNote, rows);
+                history.saved(currentNote, rows);
             }
+            Diagnostics.SAVE_EDT.recordSince(start);
         }
     }
 
-    private void resetAutoSaveTimer() {
-        if (autoSaveTimer != null) {
-            autoSaveTimer.stop();
+    /**
+     * Saves pending edits and waits for them to reach disk. Called when the
+     * extension is unloaded, from whichever thread Burp uses for that.
+     */
+    public void shutdown() {
+        // Captures already queued reach the editor or the writer before the final save
+        captureHandler.setRule(null);
+        captureQueue.close();
+        Runnable finalSave = () -> {
+            saveScheduler.close();
+            editorPanel.commitEdits();
+            saveCurrentNote();
+            if (currentNote != null) {
+                history.checkpoint(currentNote);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            finalSave.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(finalSave);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
-        autoSaveTimer = new javax.swing.Timer(2000, e -> saveCurrentNote());
-        autoSaveTimer.setRepeats(false);
-        autoSaveTimer.start();
+        prefetcher.shutdownNow();
+        loader.shutdownNow();
+        // The index and the history save themselves into the store, so they close first
+        searchIndex.close();
+        history.close();
+        store.close();
+        MarkdownEditorPanel.shutdown();
+        diagnostics.close();
     }
 }
@@ -0,0 +1,95 @@
+package com.notesplus;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * The headings of the open note, indented by level. Clicking one scrolls the
+ * editor to it. The list reads the editor's heading index directly and is
+ * only repainted when a heading is added, removed or renamed; headings that
+ * merely move with the rows above them are looked up again on click.
+ */
+class OutlinePanel extends JPanel {
+
+    private static final int INDENT = 12;
+
+    private final MarkdownEditorPanel editorPanel;
+    private final OutlineModel model = new OutlineModel();
+
+    OutlinePanel(MarkdownEditorPanel editorPanel) {
+        super(new BorderLayout());
+        this.editorPanel = editorPanel;
+        setBackground(new Color(240, 240, 240));
+        setBorder(new EmptyBorder(10, 10, 10, 10));
+        setPreferredSize(new Dimension(200, 0));
+
+        JLabel header = new JLabel("Outline");
+        header.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        add(header, BorderLayout.NORTH);
+
+        JList<HeadingIndex.Heading> list = new JList<>(model);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        // Fixed cells, so a note with thousands of headings never measures them all
+        list.setFixedCellHeight(20);
+        list.setPrototypeCellValue(new HeadingIndex.Heading(0, 1, "Prototype heading"));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                HeadingIndex.Heading heading = (HeadingIndex.Heading) value;
+                String title = heading.title().isEmpty() ? "(untitled)" : heading.title();
+                super.getListCellRendererComponent(list, title, index, isSelected, cellHasFocus);
+                setBorder(new EmptyBorder(0, 4 + INDENT * (heading.level() - 1), 0, 4));
+                setFont(heading.level() == 1 ? list.getFont().deriveFont(Font.BOLD) : list.getFont());
+                return this;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0 && list.getCellBounds(index, index).contains(e.getPoint())) {
+                    editorPanel.scrollToRow(model.getElementAt(index).row());
+                }
+            }
+        });
+
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setBorder(new EmptyBorder(10, 0, 0, 0));
+        add(scrollPane, BorderLayout.CENTER);
+
+        editorPanel.setOutlineListener(model::refresh);
+        model.refresh();
+    }
+
+    private final class OutlineModel extends AbstractListModel<HeadingIndex.Heading> {
+        private int size = 0;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public HeadingIndex.Heading getElementAt(int index) {
+            return editorPanel.headings().get(index);
+        }
+
+        void refresh() {
+            int old = size;
+            size = editorPanel.headings().size();
+            if (old > size) {
+                fireIntervalRemoved(this, size, old - 1);
+            } else if (size > old) {
+                fireIntervalAdded(this, old, size - 1);
+            }
+            if (Math.min(old, size) > 0) {
+                fireContentsChanged(this, 0, Math.min(old, size) - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.notesplus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.persistence.PersistedObject;
+
+/**
+ * Notes kept in the Burp project file through Montoya's extension data, so
+ * each engagement has its own notes and they travel with the project.
+ *
+ * Under the extension data, {@code notes} has one child object per note with
+ * its {@code size} and {@code modified} longs and its {@code body} string, and
+ * {@code data} holds byte arrays such as the saved search index. Only the
+ * longs are read when the store is created; a body is read when its note is
+ * opened or indexed, so startup does not grow with the text in the project.
+ *
+ * The persisted objects are only touched on one writer thread. Montoya has no
+ * append, so every saved batch rewrites the note's body. The rows of the note
+ * being edited are kept in memory, so a batch is applied to them directly
+ * instead of re-splitting the body each time, and row indices stay valid
+ * while the editor's rows are unsettled.
+ */
+final class ProjectNoteStore implements NoteStore {
+
+    private static final String NOTES = "notes";
+    private static final String DATA = "data";
+    private static final String BODY = "body";
+    private static final String SIZE = "size";
+    private static final String MODIFIED = "modified";
+
+    private final Supplier<PersistedObject> newObject;
+    private final PersistedObject notes;
+    private final PersistedObject data;
+    private final Map<String, NoteCatalog.Entry> entries = new ConcurrentHashMap<>();
+    // The note last edited and its rows as the editor has them; writer thread only
+    private String editedName = null;
+    private LineDocument editedRows = null;
+    private final List<NoteCatalog.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notes-project-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ProjectNoteStore(PersistedObject root) {
+        this(root, PersistedObject::persistedObject);
+    }
+
+    /** {@code newObject} creates empty child objects; Burp's factory only works inside Burp. */
+    ProjectNoteStore(PersistedObject root, Supplier<PersistedObject> newObject) {
+        this.newObject = newObject;
+        this.notes = child(root, NOTES);
+        this.data = child(root, DATA);
+        for (String name : notes.childObjectKeys()) {
+            PersistedObject note = notes.getChildObject(name);
+            Long size = note.getLong(SIZE);
+            Long modified = note.getLong(MODIFIED);
+            entries.put(name, entry(name, size == null ? 0 : size, modified == null ? 0 : modified));
+        }
+    }
+
+    @Override
+    public void addListener(NoteCatalog.Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        // Nothing changes the project's notes behind our back
+    }
+
+    @Override
+    public List<String> sortedNames() {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public List<NoteCatalog.Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    @Override
+    public long size(String name) {
+        NoteCatalog.Entry entry = entries.get(name);
+        return entry == null ? 0 : entry.size();
+    }
+
+    @Override
+    public long modifiedMillis(String name) {
+        NoteCatalog.Entry entry = entries.get(name);
+        return entry == null ? -1 : entry.modifiedMillis();
+    }
+
+    @Override
+    public long lastWrittenMillis(String name) {
+        // Every write is our own
+        return modifiedMillis(name);
+    }
+
+    @Override
+    public boolean create(String name) throws IOException {
+        NoteCatalog.Entry entry = entry(name, 0, System.currentTimeMillis());
+        if (entries.putIfAbsent(name, entry) != null) {
+            return false;
+        }
+        execute(() -> {
+            PersistedObject note = newObject.get();
+            note.setString(BODY, "");
+            note.setLong(SIZE, 0);
+            note.setLong(MODIFIED, entry.modifiedMillis());
+            notes.setChildObject(name, note);
+        });
+        fire(l -> l.noteAdded(entry));
+        return true;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        if (entries.remove(name) == null) {
+            throw new NoSuchFileException(name);
+        }
+        execute(() -> {
+            forgetRows(name);
+            notes.deleteChildObject(name);
+        });
+        fire(l -> l.noteRemoved(name));
+    }
+
+    @Override
+    public String load(String name) throws IOException {
+        return call(() -> body(name));
+    }
+
+    @Override
+    public BufferedReader read(String name) throws IOException {
+        return new BufferedReader(new StringReader(load(name)));
+    }
+
+    @Override
+    public Path streamableFile(String name) {
+        return null;
+    }
+
+    @Override
+    public void appendEdits(String name, List<EditJournal.Entry> edits, boolean settled) {
+        // Unsettled rows need no special care: the batch goes to the rows it was made against
+        List<EditJournal.Entry> batch = new ArrayList<>(edits);
+        long queued = System.nanoTime();
+        execute(() -> {
+            if (!name.equals(editedName)) {
+                editedRows = new LineDocument();
+                editedRows.reset(LineDocument.splitLogicalRows(body(name)));
+                editedName = name;
+            }
+            for (EditJournal.Entry entry : batch) {
+                EditJournal.apply(editedRows, entry);
+            }
+            write(name, editedRows.toText());
+            Diagnostics.SAVE_WRITE.recordSince(queued);
+        });
+    }
+
+    @Override
+    public void appendText(String name, String text) {
+        execute(() -> {
+            if (!entries.containsKey(name)) {
+                return;
+            }
+            // The editor's rows no longer cover the whole note
+            forgetRows(name);
+            String body = body(name);
+            // Keep one blank line between the note and the new text
+            int newlines = 0;
+            for (int i = body.length() - 1; i >= 0 && newlines < 2 && body.charAt(i) == '\n'; i--) {
+                newlines++;
+            }
+            String separator = body.isEmpty() ? "" : "\n".repeat(2 - newlines);
+            NoteCatalog.Entry entry = write(name, body + separator + text);
+            if (entry != null) {
+                fire(l -> l.noteChanged(entry));
+            }
+        });
+    }
+
+    @Override
+    public byte[] readData(String key) throws IOException {
+        return call(() -> {
+            ByteArray value = data.getByteArray(key);
+            return value == null ? null : value.getBytes();
+        });
+    }
+
+    @Override
+    public void writeData(String key, byte[] bytes) throws IOException {
+        call(() -> {
+            data.setByteArray(key, ByteArray.byteArray(bytes));
+            return null;
+        });
+    }
+
+    @Override
+    public void appendData(String key, byte[] bytes) throws IOException {
+        call(() -> {
+            ByteArray value = data.getByteArray(key);
+            data.setByteArray(key, value == null ? ByteArray.byteArray(bytes) : value.withAppended(bytes));
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteData(String key) throws IOException {
+        call(() -> {
+            data.deleteByteArray(key);
+            return null;
+        });
+    }
+
+    @Override
+    public void flush() {
+        try {
+            call(() -> null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Finishes every queued write and stops the writer thread. */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Writer thread
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private String body(String name) throws NoSuchFileException {
+        PersistedObject note = notes.getChildObject(name);
+        if (note == null || !entries.containsKey(name)) {
+            throw new NoSuchFileException(name);
+        }
+        String body = note.getString(BODY);
+        return body == null ? "" : body;
+    }
+
+    private void forgetRows(String name) {
+        if (name.equals(editedName)) {
+            editedName = null;
+            editedRows = null;
+        }
+    }
+
+    // Returns the note's new index entry, or null if it was deleted meanwhile
+    private NoteCatalog.Entry write(String name, String body) {
+        PersistedObject note = notes.getChildObject(name);
+        NoteCatalog.Entry previous = entries.get(name);
+        if (note == null || previous == null) {
+            return null;
+        }
+        // Strictly increasing, so two saves within a millisecond still look like a change
+        long modified = Math.max(System.currentTimeMillis(), previous.modifiedMillis() + 1);
+        note.setString(BODY, body);
+        note.setLong(SIZE, body.length());
+        note.setLong(MODIFIED, modified);
+        NoteCatalog.Entry entry = entry(name, body.length(), modified);
+        return entries.replace(name, entry) != null ? entry : null;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Helpers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private void execute(Task task) {
+        try {
+            writer.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Note store is closed");
+        }
+    }
+
+    private <T> T call(Callable<T> task) throws IOException {
+        try {
+            return writer.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Note store is closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private PersistedObject child(PersistedObject parent, String key) {
+        PersistedObject child = parent.getChildObject(key);
+        if (child == null) {
+            parent.setChildObject(key, newObject.get());
+            child = parent.getChildObject(key);
+        }
+        return child;
+    }
+
+    private static NoteCatalog.Entry entry(String name, long size, long modifiedMillis) {
+        return new NoteCatalog.Entry(name, size, modifiedMillis, name, List.of());
+    }
+
+    private void fire(Consumer<NoteCatalog.Listener> delivery) {
+        Runnable deliver = () -> {
+            for (NoteCatalog.Listener listener : listeners) {
+                delivery.accept(listener);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliver.run();
+        } else {
+            SwingUtilities.invokeLater(deliver);
+        }
+    }
+}
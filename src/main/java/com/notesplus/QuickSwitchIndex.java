@@ -0,0 +1,256 @@
+package com.notesplus;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fuzzy index over note names for the quick switcher. Confined to the EDT.
+ *
+ * Every name gets a stable id, its lowercased chars and a bitmask of the
+ * chars it contains, so names missing a query char are rejected with one AND.
+ * Trigrams map to bitsets of ids. A query's trigram bitsets are ANDed to
+ * find names containing it contiguously, and those rank first.
+ *
+ * Matching is a greedy subsequence scan over the stored char arrays. It
+ * reuses the index's result buffers, so a keystroke allocates no strings. A
+ * query that extends the previous one only re-checks the previous matches.
+ */
+final class QuickSwitchIndex {
+
+    static final int MAX_RESULTS = 50;
+
+    private static final int CONTIGUOUS_BONUS = 1000;
+    private static final int PREFIX_BONUS = 300;
+    // Scores of real matches can be negative: long names are penalised
+    private static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private String[] names = new String[64];
+    private char[][] folded = new char[64][];
+    private long[] masks = new long[64];
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final Map<Integer, long[]> trigrams = new HashMap<>();
+    private int idLimit = 0;
+
+    // Reused per query
+    private int[] candidates = new int[64];
+    private int candidateCount = 0;
+    private int[] nextCandidates = new int[64];
+    private long[] contiguous = new long[1];
+    private final int[] resultIds = new int[MAX_RESULTS];
+    private final int[] resultScores = new int[MAX_RESULTS];
+    private int resultCount = 0;
+    private String lastQuery = null;
+
+    void add(String name) {
+        if (ids.containsKey(name)) {
+            return;
+        }
+        int id = freeIds.isEmpty() ? idLimit++ : freeIds.pop();
+        ensureCapacity(idLimit);
+        char[] chars = name.toLowerCase().toCharArray();
+        names[id] = name;
+        folded[id] = chars;
+        masks[id] = maskOf(chars, chars.length);
+        ids.put(name, id);
+        for (int i = 0; i + 3 <= chars.length; i++) {
+            long[] bits = trigrams.computeIfAbsent(trigramKey(chars, i), k -> new long[words()]);
+            if (bits.length < words()) {
+                bits = Arrays.copyOf(bits, words());
+                trigrams.put(trigramKey(chars, i), bits);
+            }
+            bits[id >>> 6] |= 1L << id;
+        }
+        lastQuery = null;
+    }
+
+    void remove(String name) {
+        Integer id = ids.remove(name);
+        if (id == null) {
+            return;
+        }
+        char[] chars = folded[id];
+        for (int i = 0; i + 3 <= chars.length; i++) {
+            long[] bits = trigrams.get(trigramKey(chars, i));
+            if (bits != null) {
+                bits[id >>> 6] &= ~(1L << id);
+            }
+        }
+        names[id] = null;
+        folded[id] = null;
+        masks[id] = 0;
+        freeIds.push(id);
+        lastQuery = null;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /** Runs the query; read the ranked results with {@link #resultCount()} and {@link #result(int)}. */
+    void query(CharSequence query) {
+        int length = query.length();
+        char[] q = new char[length];
+        for (int i = 0; i < length; i++) {
+            q[i] = Character.toLowerCase(query.charAt(i));
+        }
+        String key = new String(q);
+        boolean narrowing = lastQuery != null && key.startsWith(lastQuery);
+        lastQuery = key;
+
+        if (!narrowing) {
+            candidateCount = 0;
+            for (int id = 0; id < idLimit; id++) {
+                if (names[id] != null) {
+                    candidates[candidateCount++] = id;
+                }
+            }
+        }
+
+        boolean useContiguous = length >= 3 && intersectTrigrams(q);
+        long queryMask = maskOf(q, length);
+        resultCount = 0;
+        int kept = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int id = candidates[c];
+            if ((masks[id] & queryMask) != queryMask) {
+                continue;
+            }
+            int score = score(folded[id], q);
+            if (score == NO_MATCH) {
+                continue;
+            }
+            nextCandidates[kept++] = id;
+            if (useContiguous && (contiguous[id >>> 6] & (1L << id)) != 0) {
+                score += CONTIGUOUS_BONUS;
+            }
+            offer(id, score);
+        }
+        int[] swap = candidates;
+        candidates = nextCandidates;
+        nextCandidates = swap;
+        candidateCount = kept;
+    }
+
+    int resultCount() {
+        return resultCount;
+    }
+
+    String result(int rank) {
+        return names[resultIds[rank]];
+    }
+
+    /**
+     * Greedy subsequence match. Returns {@link #NO_MATCH} if the query is not a
+     * subsequence, otherwise a score favouring consecutive runs, word starts
+     * and short names; it is below zero for a weak match on a long name.
+     */
+    private static int score(char[] name, char[] q) {
+        if (q.length == 0) {
+            return 0;
+        }
+        int score = 0;
+        int qi = 0;
+        int run = 0;
+        for (int i = 0; i < name.length && qi < q.length; i++) {
+            if (name[i] != q[qi]) {
+                run = 0;
+                continue;
+            }
+            run++;
+            score += 10 * run;
+            if (i == 0) {
+                score += PREFIX_BONUS;
+            } else if (isSeparator(name[i - 1])) {
+                score += 40;
+            }
+            qi++;
+        }
+        if (qi < q.length) {
+            return NO_MATCH;
+        }
+        return score - name.length;
+    }
+
+    // Keeps the best MAX_RESULTS in descending order; insertion into a small sorted array
+    private void offer(int id, int score) {
+        int pos = resultCount;
+        if (resultCount == MAX_RESULTS) {
+            if (score <= resultScores[MAX_RESULTS - 1]) {
+                return;
+            }
+            pos = MAX_RESULTS - 1;
+        } else {
+            resultCount++;
+        }
+        while (pos > 0 && (resultScores[pos - 1] < score
+                || (resultScores[pos - 1] == score && names[resultIds[pos - 1]].compareTo(names[id]) > 0))) {
+            resultScores[pos] = resultScores[pos - 1];
+            resultIds[pos] = resultIds[pos - 1];
+            pos--;
+        }
+        resultScores[pos] = score;
+        resultIds[pos] = id;
+    }
+
+    private boolean intersectTrigrams(char[] q) {
+        int words = words();
+        if (contiguous.length < words) {
+            contiguous = new long[words];
+        }
+        Arrays.fill(contiguous, 0, words, -1L);
+        for (int i = 0; i + 3 <= q.length; i++) {
+            long[] bits = trigrams.get(trigramKey(q, i));
+            if (bits == null) {
+                Arrays.fill(contiguous, 0, words, 0L);
+                return false;
+            }
+            for (int w = 0; w < words; w++) {
+                contiguous[w] &= w < bits.length ? bits[w] : 0L;
+            }
+        }
+        return true;
+    }
+
+    private int words() {
+        return Math.max(1, (idLimit + 63) >>> 6);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= names.length) {
+            return;
+        }
+        int capacity = Math.max(size, names.length * 2);
+        names = Arrays.copyOf(names, capacity);
+        folded = Arrays.copyOf(folded, capacity);
+        masks = Arrays.copyOf(masks, capacity);
+        candidates = Arrays.copyOf(candidates, capacity);
+        nextCandidates = Arrays.copyOf(nextCandidates, capacity);
+        lastQuery = null;
+    }
+
+    // Three chars packed into one int; note names are ASCII after sanitizing
+    private static int trigramKey(char[] chars, int i) {
+        return (chars[i] << 16) ^ (chars[i + 1] << 8) ^ chars[i + 2];
+    }
+
+    private static long maskOf(char[] chars, int length) {
+        long mask = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c >= 'a' && c <= 'z') {
+                mask |= 1L << (c - 'a');
+            } else if (c >= '0' && c <= '9') {
+                mask |= 1L << (26 + c - '0');
+            }
+        }
+        return mask;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '_' || c == '-' || c == '.' || c == ' ';
+    }
+}
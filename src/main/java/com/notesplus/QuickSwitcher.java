@@ -0,0 +1,161 @@
+package com.notesplus;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.function.Consumer;
+
+/**
+ * Ctrl+P style popup that fuzzy-matches note names as you type and opens the
+ * chosen note. Filtering happens on every keystroke against a
+ * {@link QuickSwitchIndex}; the list model reads straight from the index's
+ * result buffers.
+ */
+class QuickSwitcher {
+
+    private final QuickSwitchIndex index;
+    private final Consumer<String> onOpen;
+    private final ResultsModel model = new ResultsModel();
+    private JDialog dialog;
+    private JTextField queryField;
+    private JList<String> resultsList;
+
+    QuickSwitcher(QuickSwitchIndex index, Consumer<String> onOpen) {
+        this.index = index;
+        this.onOpen = onOpen;
+    }
+
+    void show(Component owner) {
+        if (dialog == null) {
+            createDialog(owner);
+        }
+        queryField.setText("");
+        refresh();
+        dialog.setLocationRelativeTo(owner);
+        dialog.setVisible(true);
+        queryField.requestFocusInWindow();
+    }
+
+    private void createDialog(Component owner) {
+        dialog = new JDialog(SwingUtilities.getWindowAncestor(owner), "Open note", Dialog.ModalityType.MODELESS);
+        dialog.setSize(420, 360);
+
+        queryField = new JTextField();
+        queryField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+        });
+        queryField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN -> moveSelection(1);
+                    case KeyEvent.VK_UP -> moveSelection(-1);
+                    case KeyEvent.VK_ENTER -> openSelected();
+                    case KeyEvent.VK_ESCAPE -> dialog.setVisible(false);
+                    default -> {
+                        return;
+                    }
+                }
+                e.consume();
+            }
+        });
+
+        resultsList = new JList<>(model);
+        resultsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultsList.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        resultsList.setFocusable(false);
+        resultsList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                openSelected();
+            }
+        });
+
+        JPanel content = new JPanel(new BorderLayout(0, 6));
+        content.setBorder(new EmptyBorder(8, 8, 8, 8));
+        content.add(queryField, BorderLayout.NORTH);
+        content.add(new JScrollPane(resultsList), BorderLayout.CENTER);
+        dialog.setContentPane(content);
+        dialog.addWindowFocusListener(new WindowAdapter() {
+            @Override
+            public void windowLostFocus(WindowEvent e) {
+                dialog.setVisible(false);
+            }
+        });
+    }
+
+    private void refresh() {
+        index.query(queryField.getDocument().getLength() == 0 ? "" : queryField.getText());
+        model.changed();
+        if (model.getSize() > 0) {
+            resultsList.setSelectedIndex(0);
+        }
+    }
+
+    private void moveSelection(int delta) {
+        int size = model.getSize();
+        if (size == 0) {
+            return;
+        }
+        int next = Math.floorMod(resultsList.getSelectedIndex() + delta, size);
+        resultsList.setSelectedIndex(next);
+        resultsList.ensureIndexIsVisible(next);
+    }
+
+    private void openSelected() {
+        String name = resultsList.getSelectedValue();
+        if (name != null) {
+            dialog.setVisible(false);
+            onOpen.accept(name);
+        }
+    }
+
+    private final class ResultsModel extends AbstractListModel<String> {
+        private int size = 0;
+
+        void changed() {
+            int old = size;
+            size = index.resultCount();
+            if (size < old) {
+                fireIntervalRemoved(this, size, old - 1);
+            } else if (size > old) {
+                fireIntervalAdded(this, old, size - 1);
+            }
+            if (Math.min(old, size) > 0) {
+                fireContentsChanged(this, 0, Math.min(old, size) - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int i) {
+            return index.result(i);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.notesplus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Size-bounded LRU cache of rendered HTML keyed by the raw markdown of a row.
+ * The budget is counted in bytes of key plus value text; the least recently
+ * used entries are evicted once it is exceeded.
+ */
+class RenderCache {
+
+    // Rough per-entry cost of the map node, the two String headers and their arrays
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns the cached HTML for {@code raw}, or null without counting a miss. */
+    synchronized String getIfPresent(String raw) {
+        String html = entries.get(raw);
+        if (html != null) {
+            hits.incrementAndGet();
+        }
+        return html;
+    }
+
+    /** Returns the cached HTML for {@code raw}, rendering and caching it on a miss. */
+    String get(String raw, Function<String, String> renderer) {
+        synchronized (this) {
+            String html = entries.get(raw);
+            if (html != null) {
+                hits.incrementAndGet();
+                return html;
+            }
+        }
+        misses.incrementAndGet();
+        // Render outside the lock; two threads racing on the same line just both render it
+        String html = renderer.apply(raw);
+        put(raw, html);
+        return html;
+    }
+
+    private synchronized void put(String raw, String html) {
+        long cost = entryCost(raw, html);
+        if (cost > maxBytes) {
+            return;
+        }
+        String previous = entries.put(raw, html);
+        if (previous != null) {
+            currentBytes -= entryCost(raw, previous);
+        }
+        currentBytes += cost;
+
+        Iterator<Map.Entry<String, String>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            currentBytes -= entryCost(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long sizeBytes() {
+        return currentBytes;
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.1f%%]",
+                size(), sizeBytes(), maxBytes, hits(), misses(), evictions(), hitRate() * 100);
+    }
+
+    private static long entryCost(String raw, String html) {
+        return ENTRY_OVERHEAD + 2L * (raw.length() + html.length());
+    }
+}
@@ -0,0 +1,135 @@
+package com.notesplus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Renders markdown on a pool of background threads and hands the results back
+ * to the EDT in batches: however many lines finish between two EDT cycles, they
+ * are applied by a single invokeLater.
+ *
+ * Rows on screen are rendered ahead of background cache warming. Callers stamp
+ * their callbacks with a generation and ignore results that arrive stale.
+ * Warming skips lines the caller never renders as HTML.
+ */
+class RenderPipeline {
+
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_WARM = 1;
+    private static final int WARM_CHUNK_SIZE = 256;
+
+    private final Function<String, String> renderer;
+    private final Predicate<String> needsRender;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentLinkedQueue<Runnable> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong sequence = new AtomicLong();
+
+    RenderPipeline(Function<String, String> renderer, Predicate<String> needsRender) {
+        this.renderer = renderer;
+        this.needsRender = needsRender;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "notes-render-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Renders {@code raw} off the EDT and calls {@code onEdt} with the HTML on the EDT. */
+    void render(String raw, Consumer<String> onEdt) {
+        executor.execute(new Task(PRIORITY_VISIBLE, () -> {
+            String html = renderer.apply(raw);
+            complete(() -> onEdt.accept(html));
+        }));
+    }
+
+    /**
+     * Renders every line in the background purely to populate the render cache.
+     * Work is split into chunks across the pool and stops once {@code cancelled} is true.
+     */
+    void warm(List<String> lines, BooleanSupplier cancelled) {
+        for (int start = 0; start < lines.size(); start += WARM_CHUNK_SIZE) {
+            List<String> chunk = lines.subList(start, Math.min(lines.size(), start + WARM_CHUNK_SIZE));
+            executor.execute(new Task(PRIORITY_WARM, () -> {
+                for (String line : chunk) {
+                    if (cancelled.getAsBoolean()) {
+                        return;
+                    }
+                    if (needsRender.test(line)) {
+                        renderer.apply(line);
+                    }
+                }
+            }));
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void complete(Runnable applyOnEdt) {
+        completed.add(applyOnEdt);
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<Runnable> batch = new ArrayList<>();
+        Runnable next;
+        while ((next = completed.poll()) != null) {
+            batch.add(next);
+        }
+        for (Runnable apply : batch) {
+            apply.run();
+        }
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+
+        private final int priority;
+        private final long order = sequence.getAndIncrement();
+        private final Runnable body;
+
+        Task(int priority, Runnable body) {
+            this.priority = priority;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            try {
+                body.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.notesplus;
+
+import java.util.Arrays;
+
+/**
+ * Pixel heights of the editor rows, measured or estimated.
+ *
+ * Offsets come from a Fenwick tree over the heights, so changing one row's
+ * height and looking up an offset or the row at a y position are O(log n),
+ * and the total height is kept as a running sum. Appending keeps the tree
+ * valid. Inserting or removing in the middle shifts the heights and rebuilds
+ * the tree in O(n) on the next lookup, once for any number of such edits.
+ */
+class RowHeightIndex {
+
+    private int[] heights = new int[64];
+    // 1-based: tree[i] holds the sum of the heights in (i - lowbit(i), i]
+    private int[] tree = new int[65];
+    private int size = 0;
+    private int total = 0;
+    private boolean treeDirty = false;
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+        total = 0;
+        treeDirty = false;
+    }
+
+    int get(int index) {
+        return heights[index];
+    }
+
+    void set(int index, int height) {
+        int delta = height - heights[index];
+        if (delta == 0) {
+            return;
+        }
+        heights[index] = height;
+        total += delta;
+        if (!treeDirty) {
+            for (int i = index + 1; i <= size; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+    }
+
+    void add(int height) {
+        ensureCapacity(size + 1);
+        heights[size] = height;
+        size++;
+        total += height;
+        if (!treeDirty) {
+            // The new node covers (size - lowbit, size]: this height plus the sum of the rows before it in that range
+            tree[size] = height + prefix(size - 1) - prefix(size - (size & -size));
+        }
+    }
+
+    void insert(int index, int height) {
+        if (index == size) {
+            add(height);
+            return;
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(heights, index, heights, index + 1, size - index);
+        heights[index] = height;
+        size++;
+        total += height;
+        treeDirty = true;
+    }
+
+    void remove(int index) {
+        total -= heights[index];
+        System.arraycopy(heights, index + 1, heights, index, size - index - 1);
+        size--;
+        treeDirty = true;
+    }
+
+    /** Inserts the heights of consecutive rows, shifting the rows after them once. */
+    void insertAll(int index, int[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        ensureCapacity(size + values.length);
+        System.arraycopy(heights, index, heights, index + values.length, size - index);
+        System.arraycopy(values, 0, heights, index, values.length);
+        size += values.length;
+        for (int height : values) {
+            total += height;
+        }
+        treeDirty = true;
+    }
+
+    void removeRange(int index, int count) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = index; i < index + count; i++) {
+            total -= heights[i];
+        }
+        System.arraycopy(heights, index + count, heights, index, size - index - count);
+        size -= count;
+        treeDirty = true;
+    }
+
+    /** Y offset of the top of the given row (index == size gives the total height). */
+    int offsetOf(int index) {
+        if (index >= size) {
+            return total;
+        }
+        rebuildTree();
+        return prefix(index);
+    }
+
+    int totalHeight() {
+        return total;
+    }
+
+    /** Index of the row that contains the given y offset, clamped to the valid range. */
+    int indexAt(int y) {
+        if (size == 0) {
+            return 0;
+        }
+        rebuildTree();
+        // Descends the tree to the last row whose top is at or above y
+        int index = 0;
+        int remaining = y;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>>= 1) {
+            int next = index + step;
+            if (next <= size && tree[next] <= remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.min(index, size - 1);
+    }
+
+    // Sum of the first count heights; the tree must be current
+    private int prefix(int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void rebuildTree() {
+        if (!treeDirty) {
+            return;
+        }
+        for (int i = 1; i <= size; i++) {
+            tree[i] = heights[i - 1];
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+        treeDirty = false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > heights.length) {
+            int grown = Math.max(capacity, heights.length * 2);
+            heights = Arrays.copyOf(heights, grown);
+            tree = Arrays.copyOf(tree, grown + 1);
+        }
+    }
+}
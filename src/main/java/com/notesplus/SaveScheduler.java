@@ -0,0 +1,132 @@
+package com.notesplus;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when open notes are autosaved. A note is saved once its edits
+ * have been quiet for the debounce interval, or at the latest when its
+ * oldest unsaved edit reaches the staleness limit, so continuous typing is
+ * still saved regularly. Both grow with the measured cost of saving a note
+ * of that size, keeping autosaves to a small share of the EDT.
+ *
+ * One timer serves every registered note. Reporting an edit only updates
+ * fields; the timer is re-armed when it fires, not on each keystroke.
+ * Confined to the EDT, like the saves it runs.
+ */
+final class SaveScheduler implements AutoCloseable {
+
+    private static final long MIN_DEBOUNCE_MILLIS = 2000;
+    private static final long MAX_DEBOUNCE_MILLIS = 10_000;
+    private static final long MIN_STALENESS_MILLIS = 30_000;
+    private static final long MAX_STALENESS_MILLIS = 120_000;
+    // Debounce and staleness as multiples of the expected save cost
+    private static final long DEBOUNCE_PER_COST = 50;
+    private static final long STALENESS_PER_COST = 100;
+
+    private final List<Target> targets = new ArrayList<>();
+    private final Timer timer = new Timer(0, e -> tick());
+    // Measured save cost per row of the saved note, smoothed over recent saves
+    private double nanosPerRow = 0;
+    private long armedFor = Long.MAX_VALUE;
+
+    SaveScheduler() {
+        timer.setRepeats(false);
+    }
+
+    /** Registers a note's save; {@code save} runs on the EDT and must not throw. */
+    Target register(Runnable save) {
+        Target target = new Target(save);
+        targets.add(target);
+        return target;
+    }
+
+    /** Something that is saved as a unit, usually the note open in an editor. */
+    final class Target {
+        private final Runnable save;
+        private boolean dirty = false;
+        private long firstChange;
+        private long lastChange;
+        private int rows;
+
+        private Target(Runnable save) {
+            this.save = save;
+        }
+
+        /** Reports an edit to a note that now has {@code rows} rows. */
+        void changed(int rows) {
+            long now = System.nanoTime();
+            this.rows = rows;
+            lastChange = now;
+            if (!dirty) {
+                dirty = true;
+                firstChange = now;
+                arm(dueAt());
+            }
+        }
+
+        /** Nothing is left unsaved: the caller saved the note itself or dropped its edits. */
+        void clear() {
+            dirty = false;
+        }
+
+        private long dueAt() {
+            long cost = (long) (nanosPerRow * Math.max(1, rows));
+            long debounce = clamp(cost * DEBOUNCE_PER_COST, MIN_DEBOUNCE_MILLIS, MAX_DEBOUNCE_MILLIS);
+            long staleness = clamp(cost * STALENESS_PER_COST, MIN_STALENESS_MILLIS, MAX_STALENESS_MILLIS);
+            return Math.min(lastChange + debounce, firstChange + staleness);
+        }
+
+        private void run() {
+            dirty = false;
+            long start = System.nanoTime();
+            save.run();
+            long perRow = (System.nanoTime() - start) / Math.max(1, rows);
+            nanosPerRow = nanosPerRow == 0 ? perRow : nanosPerRow * 0.8 + perRow * 0.2;
+        }
+    }
+
+    private static long clamp(long nanos, long minMillis, long maxMillis) {
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(minMillis), Math.min(nanos, TimeUnit.MILLISECONDS.toNanos(maxMillis)));
+    }
+
+    private void tick() {
+        armedFor = Long.MAX_VALUE;
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        // Saves may register targets or report further edits
+        for (Target target : new ArrayList<>(targets)) {
+            if (!target.dirty) {
+                continue;
+            }
+            long due = target.dueAt();
+            if (due - now <= 0) {
+                target.run();
+            } else {
+                wait = Math.min(wait, due - now);
+            }
+        }
+        if (wait != Long.MAX_VALUE) {
+            arm(now + wait);
+        }
+    }
+
+    // Only ever brings the timer forward; a tick that comes early re-arms itself
+    private void arm(long due) {
+        if (timer.isRunning() && armedFor - due <= 0) {
+            return;
+        }
+        armedFor = due;
+        long delay = TimeUnit.NANOSECONDS.toMillis(Math.max(0, due - System.nanoTime()));
+        timer.setInitialDelay((int) Math.min(delay, Integer.MAX_VALUE));
+        timer.restart();
+    }
+
+    /** Stops the timer; unsaved targets are left for the caller to save. */
+    @Override
+    public void close() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,642 @@
+package com.notesplus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Incremental inverted index over every note in the {@link NoteStore}.
+ *
+ * Tokens are runs of letters, digits and {@code _ . -}, so hostnames and
+ * parameter names stay whole. Their dot/dash/underscore parts are indexed too.
+ * Every token is also registered under its trigrams, which lets a query
+ * fragment such as {@code xampl} find {@code api.example.com}.
+ *
+ * Postings map a token to the notes and physical line numbers that contain it.
+ * Notes are (re)indexed one at a time on a background thread. A note's tokens
+ * are computed outside the lock and swapped in under a short write lock, so
+ * searches never wait for tokenizing. The index is saved gzipped to the
+ * store's {@code .search-index} data, with each note's size and mtime, so a
+ * restart only re-indexes notes that changed.
+ */
+class SearchIndex implements AutoCloseable {
+
+    record Hit(String note, int line, String snippet, double score) {
+    }
+
+    private static final String INDEX_FILE = ".search-index";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final double PARTIAL_MATCH_WEIGHT = 0.6;
+    private static final long SAVE_DELAY_SECONDS = 30;
+
+    private static final class IndexedNote {
+        final long size;
+        final long modifiedMillis;
+        final Map<String, int[]> tokenLines;
+        // Rows handed over by the editor, newer than the file; snippets come from here when set
+        final List<String> rows;
+
+        IndexedNote(long size, long modifiedMillis, Map<String, int[]> tokenLines, List<String> rows) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.tokenLines = tokenLines;
+            this.rows = rows;
+        }
+    }
+
+    private final NoteStore store;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // token -> note -> sorted line numbers
+    private final Map<String, Map<String, int[]>> postings = new HashMap<>();
+    // trigram -> tokens containing it
+    private final Map<String, Set<String>> grams = new HashMap<>();
+    private final Map<String, IndexedNote> notes = new HashMap<>();
+    private final ScheduledExecutorService indexer = Executors.newSingleThreadScheduledExecutor(
+            r -> daemon(r, "notes-indexer"));
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor(r -> daemon(r, "notes-search"));
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private ScheduledFuture<?> pendingSave;
+    // Set by close(), after which no more saves are scheduled; guarded by this
+    private boolean closing = false;
+
+    SearchIndex(NoteStore store) {
+        this.store = store;
+    }
+
+    /** Loads the saved index, then re-indexes only catalog entries whose size or mtime changed. */
+    void start(Collection<NoteCatalog.Entry> catalogEntries) {
+        List<NoteCatalog.Entry> snapshot = new ArrayList<>(catalogEntries);
+        indexer.execute(() -> {
+            load();
+            Set<String> present = new HashSet<>();
+            for (NoteCatalog.Entry entry : snapshot) {
+                present.add(entry.name());
+                indexFileNow(entry.name(), entry.size(), entry.modifiedMillis());
+            }
+            List<String> stale = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (String note : notes.keySet()) {
+                    if (!present.contains(note)) {
+                        stale.add(note);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (String note : stale) {
+                removeNow(note);
+            }
+        });
+    }
+
+    /** Re-indexes a note from the store unless the indexed copy has the same size and mtime. */
+    void indexFile(String note, long size, long modifiedMillis) {
+        indexer.execute(() -> indexFileNow(note, size, modifiedMillis));
+    }
+
+    /** Re-indexes a note from the editor's rows, e.g. right after it was saved. */
+    void indexRows(String note, List<String> rows) {
+        indexer.execute(() -> {
+            Map<String, int[]> tokenLines = tokenize(rows);
+            // Size and mtime unknown; the next catalog change for the note re-reads the file
+            replace(note, new IndexedNote(-1, -1, tokenLines, rows));
+        });
+    }
+
+    void removeNote(String note) {
+        indexer.execute(() -> removeNow(note));
+    }
+
+    /**
+     * Runs a search on the search thread and delivers the hits on the EDT.
+     * A search superseded by a newer one before it finishes is not delivered.
+     */
+    void search(String query, int limit, Consumer<List<Hit>> onEdt) {
+        long generation = searchGeneration.incrementAndGet();
+        searcher.execute(() -> {
+            if (generation != searchGeneration.get()) {
+                return;
+            }
+            List<Hit> hits = searchNow(query, limit);
+            SwingUtilities.invokeLater(() -> {
+                if (generation == searchGeneration.get()) {
+                    onEdt.accept(hits);
+                }
+            });
+        });
+    }
+
+    /** Ranked hits for the query; every term must match a note (exactly or as a fragment). */
+    List<Hit> searchNow(String query, int limit) {
+        List<String> terms = new ArrayList<>(tokenizeQuery(query));
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Double> scores = null;
+        Map<String, Integer> firstLine = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            int noteCount = Math.max(1, notes.size());
+            for (String term : terms) {
+                Map<String, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Double> match : matchingTokens(term).entrySet()) {
+                    Map<String, int[]> perNote = postings.get(match.getKey());
+                    double idf = Math.log(1.0 + (double) noteCount / perNote.size());
+                    for (Map.Entry<String, int[]> posting : perNote.entrySet()) {
+                        int[] lines = posting.getValue();
+                        double score = match.getValue() * idf * (1.0 + Math.log(lines.length));
+                        termScores.merge(posting.getKey(), score, Double::sum);
+                        if (scores == null) {
+                            // Lines of the first term decide where the snippet comes from
+                            firstLine.merge(posting.getKey(), lines[0], Math::min);
+                        }
+                    }
+                }
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    for (Map.Entry<String, Double> e : scores.entrySet()) {
+                        e.setValue(e.getValue() + termScores.get(e.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<String, List<String>> rowsByNote = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String note : scores.keySet()) {
+                IndexedNote indexed = notes.get(note);
+                if (indexed != null && indexed.rows != null) {
+                    rowsByNote.put(note, indexed.rows);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<Hit> hits = new ArrayList<>();
+        for (Map.Entry<String, Double> e : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            int line = firstLine.getOrDefault(e.getKey(), 0);
+            List<String> rows = rowsByNote.get(e.getKey());
+            String text = rows != null ? lineOf(rows, line) : readLine(e.getKey(), line);
+            hits.add(new Hit(e.getKey(), line, snippet(text), e.getValue()));
+        }
+        return hits;
+    }
+
+    int noteCount() {
+        lock.readLock().lock();
+        try {
+            return notes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int tokenCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Finishes queued indexing, then saves once; a delayed save still queued is dropped, not waited for. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closing = true;
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+            }
+        }
+        indexer.shutdown();
+        searcher.shutdownNow();
+        try {
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Indexing (indexer thread)
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void indexFileNow(String note, long size, long modifiedMillis) {
+        lock.readLock().lock();
+        try {
+            IndexedNote existing = notes.get(note);
+            if (existing != null && existing.size == size && existing.modifiedMillis == modifiedMillis) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (BufferedReader reader = store.read(note)) {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int n; (n = reader.read(buffer)) > 0;) {
+                content.append(buffer, 0, n);
+            }
+            replace(note, new IndexedNote(size, modifiedMillis, tokenize(List.of(content.toString())), null));
+        } catch (NoSuchFileException e) {
+            removeNow(note);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void replace(String note, IndexedNote indexed) {
+        lock.writeLock().lock();
+        try {
+            unlink(note);
+            notes.put(note, indexed);
+            for (Map.Entry<String, int[]> e : indexed.tokenLines.entrySet()) {
+                Map<String, int[]> perNote = postings.get(e.getKey());
+                if (perNote == null) {
+                    perNote = new HashMap<>(4);
+                    postings.put(e.getKey(), perNote);
+                    addGrams(e.getKey());
+                }
+                perNote.put(note, e.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleSave();
+    }
+
+    private void removeNow(String note) {
+        lock.writeLock().lock();
+        try {
+            unlink(note);
+            notes.remove(note);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleSave();
+    }
+
+    // Caller holds the write lock
+    private void unlink(String note) {
+        IndexedNote old = notes.get(note);
+        if (old == null) {
+            return;
+        }
+        for (String token : old.tokenLines.keySet()) {
+            Map<String, int[]> perNote = postings.get(token);
+            if (perNote != null) {
+                perNote.remove(note);
+                if (perNote.isEmpty()) {
+                    postings.remove(token);
+                    removeGrams(token);
+                }
+            }
+        }
+    }
+
+    private void addGrams(String token) {
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            grams.computeIfAbsent(token.substring(i, i + 3), k -> new HashSet<>()).add(token);
+        }
+    }
+
+    private void removeGrams(String token) {
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            String gram = token.substring(i, i + 3);
+            Set<String> tokens = grams.get(gram);
+            if (tokens != null) {
+                tokens.remove(token);
+                if (tokens.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    // Caller holds the read lock. Exact token weighs 1.0, tokens containing the term less.
+    private Map<String, Double> matchingTokens(String term) {
+        Map<String, Double> matches = new LinkedHashMap<>();
+        if (postings.containsKey(term)) {
+            matches.put(term, 1.0);
+        }
+        if (term.length() < 3) {
+            return matches;
+        }
+        // Intersect the candidate sets of every trigram, smallest first
+        List<Set<String>> sets = new ArrayList<>();
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            Set<String> tokens = grams.get(term.substring(i, i + 3));
+            if (tokens == null) {
+                return matches;
+            }
+            sets.add(tokens);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        for (String candidate : sets.get(0)) {
+            if (candidate.equals(term) || !candidate.contains(term)) {
+                continue;
+            }
+            boolean inAll = true;
+            for (int i = 1; i < sets.size() && inAll; i++) {
+                inAll = sets.get(i).contains(candidate);
+            }
+            if (inAll) {
+                matches.put(candidate, PARTIAL_MATCH_WEIGHT);
+            }
+        }
+        return matches;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Tokenizing
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Token -> sorted 0-based physical line numbers, for text given as rows that may span lines. */
+    static Map<String, int[]> tokenize(List<String> rows) {
+        Map<String, List<Integer>> lines = new HashMap<>();
+        scan(rows, lines);
+        Map<String, int[]> result = new HashMap<>(lines.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : lines.entrySet()) {
+            List<Integer> list = e.getValue();
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            result.put(e.getKey(), array);
+        }
+        return result;
+    }
+
+    /** Query terms in the order typed; the first one picks the snippet line. */
+    static Set<String> tokenizeQuery(String query) {
+        Map<String, List<Integer>> terms = new LinkedHashMap<>();
+        scan(List.of(query), terms);
+        return terms.keySet();
+    }
+
+    private static void scan(List<String> rows, Map<String, List<Integer>> lines) {
+        int line = 0;
+        for (String row : rows) {
+            int start = -1;
+            for (int i = 0; i <= row.length(); i++) {
+                char c = i < row.length() ? row.charAt(i) : '\n';
+                if (isTokenChar(c)) {
+                    if (start < 0) {
+                        start = i;
+                    }
+                    continue;
+                }
+                if (start >= 0) {
+                    addToken(lines, row, start, i, line);
+                    start = -1;
+                }
+                if (c == '\n') {
+                    line++;
+                }
+            }
+        }
+    }
+
+    private static void addToken(Map<String, List<Integer>> lines, String row, int start, int end, int line) {
+        String token = trimToken(row.substring(start, Math.min(end, start + MAX_TOKEN_LENGTH)).toLowerCase());
+        if (token.isEmpty()) {
+            return;
+        }
+        addLine(lines, token, line);
+        // Also index the parts of compound tokens: api.example.com -> api, example, com
+        if (token.indexOf('.') >= 0 || token.indexOf('-') >= 0 || token.indexOf('_') >= 0) {
+            for (String part : token.split("[._\\-]+")) {
+                if (part.length() >= 2) {
+                    addLine(lines, part, line);
+                }
+            }
+        }
+    }
+
+    private static void addLine(Map<String, List<Integer>> lines, String token, int line) {
+        List<Integer> list = lines.computeIfAbsent(token, k -> new ArrayList<>(2));
+        if (list.isEmpty() || list.get(list.size() - 1) != line) {
+            list.add(line);
+        }
+    }
+
+    private static String trimToken(String token) {
+        int start = 0;
+        int end = token.length();
+        while (start < end && (token.charAt(start) == '.' || token.charAt(start) == '-')) {
+            start++;
+        }
+        while (end > start && (token.charAt(end - 1) == '.' || token.charAt(end - 1) == '-')) {
+            end--;
+        }
+        return token.substring(start, end);
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+    }
+
+    private String readLine(String note, int line) {
+        try (BufferedReader reader = store.read(note)) {
+            String text = "";
+            for (int i = 0; i <= line && text != null; i++) {
+                text = reader.readLine();
+            }
+            return text == null ? "" : text;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String lineOf(List<String> rows, int line) {
+        int remaining = line;
+        for (String row : rows) {
+            String[] lines = row.split("\n", -1);
+            if (remaining < lines.length) {
+                return lines[remaining];
+            }
+            remaining -= lines.length;
+        }
+        return "";
+    }
+
+    private static String snippet(String text) {
+        text = text.trim();
+        return text.length() > 160 ? text.substring(0, 160) + "…" : text;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Persistence
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private synchronized void scheduleSave() {
+        // close() saves once the queued indexing is done
+        if (closing) {
+            return;
+        }
+        if (pendingSave == null || pendingSave.isDone()) {
+            pendingSave = indexer.schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Per note: name, size, mtime, then its tokens each with delta-encoded line numbers
+    private void save() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(buffer)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(notes.size());
+            for (Map.Entry<String, IndexedNote> e : notes.entrySet()) {
+                IndexedNote note = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(note.size);
+                out.writeLong(note.modifiedMillis);
+                out.writeInt(note.tokenLines.size());
+                for (Map.Entry<String, int[]> t : note.tokenLines.entrySet()) {
+                    out.writeUTF(t.getKey());
+                    int[] lines = t.getValue();
+                    writeVarInt(out, lines.length);
+                    int previous = 0;
+                    for (int l : lines) {
+                        writeVarInt(out, l - previous);
+                        previous = l;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            store.writeData(INDEX_FILE, buffer.toByteArray());
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void load() {
+        byte[] saved;
+        try {
+            saved = store.readData(INDEX_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (saved == null) {
+            return;
+        }
+        try (InputStream raw = new ByteArrayInputStream(saved);
+                DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(raw)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int noteCount = in.readInt();
+            for (int n = 0; n < noteCount; n++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                int tokenCount = in.readInt();
+                Map<String, int[]> tokenLines = new HashMap<>(tokenCount * 2);
+                for (int t = 0; t < tokenCount; t++) {
+                    String token = in.readUTF();
+                    int[] lines = new int[readVarInt(in)];
+                    int previous = 0;
+                    for (int i = 0; i < lines.length; i++) {
+                        previous += readVarInt(in);
+                        lines[i] = previous;
+                    }
+                    tokenLines.put(token, lines);
+                }
+                replace(name, new IndexedNote(size, modified, tokenLines, null));
+            }
+        } catch (IOException e) {
+            // A damaged index is simply rebuilt from the notes
+            lock.writeLock().lock();
+            try {
+                postings.clear();
+                grams.clear();
+                notes.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchIndex[notes=" + noteCount() + ", tokens=" + tokenCount() + "]";
+    }
+}
@@ -0,0 +1,125 @@
+package com.notesplus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Reads a note straight into logical rows without materializing the file as
+ * one string. The file is read in chunks into one reused direct buffer and
+ * decoded into a small reused char buffer. It is not memory-mapped: a mapping
+ * lives until it is garbage collected, and on Windows it keeps the file from
+ * being replaced when the note is next compacted. Lines go through a {@link LogicalRowScanner}, and
+ * rows are handed out in batches, so the heap holds little more than the rows
+ * themselves and the caller can show the first rows before the rest is read.
+ */
+final class StreamingNoteReader {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+
+    private StreamingNoteReader() {
+    }
+
+    /**
+     * Reads the file, calling {@code onBatch} with up to {@code firstBatch} rows
+     * first and up to {@code batchRows} at a time after that. Stops early, without
+     * delivering the rest, once {@code cancelled} returns true.
+     * Returns false if it was cancelled.
+     */
+    static boolean read(Path file, int firstBatch, int batchRows, Consumer<List<String>> onBatch,
+            BooleanSupplier cancelled) throws IOException {
+        Batcher batcher = new Batcher(firstBatch, batchRows, onBatch);
+        LogicalRowScanner scanner = new LogicalRowScanner(batcher);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        StringBuilder line = new StringBuilder();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean last = false;
+            while (!last) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                last = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, last);
+                    chars.flip();
+                    scanLines(chars, line, scanner);
+                    chars.clear();
+                } while (result.isOverflow());
+                // A multi-byte char cut by the end of the chunk stays in the buffer, ahead of the next read
+                bytes.compact();
+            }
+            decoder.flush(chars);
+            chars.flip();
+            scanLines(chars, line, scanner);
+        }
+
+        // Like split("\n", -1): the text after the last newline is a line, even if empty
+        scanner.accept(line.toString());
+        scanner.finish();
+        batcher.flush();
+        return !cancelled.getAsBoolean();
+    }
+
+    private static void scanLines(CharBuffer chars, StringBuilder line, LogicalRowScanner scanner) {
+        int start = chars.position();
+        int limit = chars.limit();
+        for (int i = start; i < limit; i++) {
+            if (chars.get(i) == '\n') {
+                line.append(chars, start, i);
+                scanner.accept(line.toString());
+                line.setLength(0);
+                start = i + 1;
+            }
+        }
+        line.append(chars, start, limit);
+    }
+
+    private static final class Batcher implements Consumer<String> {
+        private final int batchRows;
+        private final Consumer<List<String>> onBatch;
+        private int limit;
+        private List<String> batch;
+
+        Batcher(int firstBatch, int batchRows, Consumer<List<String>> onBatch) {
+            this.batchRows = batchRows;
+            this.onBatch = onBatch;
+            this.limit = firstBatch;
+            this.batch = new ArrayList<>(firstBatch);
+        }
+
+        @Override
+        public void accept(String row) {
+            batch.add(row);
+            if (batch.size() >= limit) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                onBatch.accept(batch);
+                limit = batchRows;
+                batch = new ArrayList<>(batchRows);
+            }
+        }
+    }
+}
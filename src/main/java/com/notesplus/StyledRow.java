@@ -0,0 +1,463 @@
+package com.notesplus;
+
+import java.awt.Color;
+import java.awt.font.TextAttribute;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A row's markdown reduced to styled lines that {@link StyledRowView} can
+ * paint directly: headings, paragraphs, bullets, numbered and task items, and
+ * rules, with bold, italic, inline code, strikethrough and links inside them.
+ *
+ * The inline parser is deliberately conservative. Anything it cannot show the
+ * way flexmark would (tables, quotes, code blocks, raw HTML, entities, images,
+ * link reference definitions) makes {@link #of} return null, and the row is
+ * rendered as HTML instead. Parsed rows are cached by raw text and shared by
+ * every row component; they are immutable and safe to read from any thread.
+ */
+final class StyledRow {
+
+    enum Kind { TEXT, HEADING, BULLET, ORDERED, TASK, RULE, BLANK }
+
+    /** One painted line: its kind, list depth, marker text and styled content. */
+    static final class Line {
+        final Kind kind;
+        final int depth;
+        final int headingLevel;
+        final String marker;
+        final boolean checked;
+        final String text;
+        final AttributedString styled;
+
+        Line(Kind kind, int depth, int headingLevel, String marker, boolean checked, String text,
+                AttributedString styled) {
+            this.kind = kind;
+            this.depth = depth;
+            this.headingLevel = headingLevel;
+            this.marker = marker;
+            this.checked = checked;
+            this.text = text;
+            this.styled = styled;
+        }
+    }
+
+    // Colors and sizes follow MarkdownStyles.CSS so painted and HTML rows look alike
+    static final Color TEXT_COLOR = new Color(0x3d3d3d);
+    static final Color HEADING_COLOR = new Color(0x0056b3);
+    static final Color STRONG_COLOR = Color.BLACK;
+    static final Color EM_COLOR = new Color(0x555555);
+    static final Color CODE_COLOR = new Color(0x333333);
+    static final Color CODE_BACKGROUND = new Color(0xf6f8fa);
+    static final Color DEL_COLOR = new Color(0x888888);
+    static final Color LINK_COLOR = new Color(0x0366d6);
+    static final Color RULE_COLOR = new Color(0xdddddd);
+    static final String BODY_FONT = "Segoe UI";
+    static final String CODE_FONT = "Consolas";
+    static final int BODY_SIZE = 14;
+    static final int CODE_SIZE = 13;
+    private static final int[] HEADING_SIZES = { 24, 20, 18, 16, 15, 14 };
+
+    private static final int BOLD = 1;
+    private static final int ITALIC = 2;
+    private static final int CODE = 4;
+    private static final int STRIKE = 8;
+    private static final int LINK = 16;
+
+    private static final Pattern HEADING = Pattern.compile("^ {0,3}(#{1,6})(?:[ \\t]+(.*?))?(?:[ \\t]+#+)?[ \\t]*$");
+    private static final Pattern RULE = Pattern.compile("^ {0,3}([-*_])(?:[ \\t]*\\1){2,}[ \\t]*$");
+    private static final Pattern BULLET = Pattern.compile("^( *)([-*+])(?:[ \\t]+(.*))?$");
+    private static final Pattern ORDERED = Pattern.compile("^( *)(\\d{1,9})([.)])(?:[ \\t]+(.*))?$");
+    private static final Pattern TASK = Pattern.compile("^\\[([ xX])\\](?:[ \\t]+(.*))?$");
+    private static final Pattern REFERENCE = Pattern.compile("^ {0,3}\\[[^\\]]+\\]:");
+    private static final Pattern CONTINUATION = Pattern.compile("^ {2,}\\S.*$");
+
+    private static final int CACHE_ENTRIES = 4096;
+    private static final StyledRow COMPLEX = new StyledRow(Collections.emptyList());
+    private static final Map<String, StyledRow> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StyledRow> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    final List<Line> lines;
+
+    private StyledRow(List<Line> lines) {
+        this.lines = lines;
+    }
+
+    /** The row as painted lines, or null if it needs the HTML renderer. */
+    static StyledRow of(String raw) {
+        StyledRow row;
+        synchronized (CACHE) {
+            row = CACHE.get(raw);
+        }
+        if (row == null) {
+            row = parse(raw);
+            if (row == null) {
+                row = COMPLEX;
+            }
+            synchronized (CACHE) {
+                CACHE.put(raw, row);
+            }
+        }
+        return row == COMPLEX ? null : row;
+    }
+
+    /** True if {@link #of} would paint the row rather than hand it to the HTML renderer. */
+    static boolean isSimple(String raw) {
+        return of(raw) != null;
+    }
+
+    /** The raw text as unstyled paragraphs; a stand-in while a complex row renders. */
+    static StyledRow plain(String raw) {
+        List<Line> lines = new ArrayList<>();
+        for (String text : raw.split("\n", -1)) {
+            lines.add(text.isBlank() ? blank() : new Line(Kind.TEXT, 0, 0, null, false, text, styled(text, null, base(0))));
+        }
+        return new StyledRow(lines);
+    }
+
+    private static StyledRow parse(String raw) {
+        if (raw.indexOf('\n') < 0) {
+            Line line = parseLine(raw);
+            return line == null ? null : new StyledRow(List.of(line));
+        }
+        // Several lines in one row means a block; only plain lists are painted
+        String[] parts = raw.split("\n", -1);
+        List<Line> lines = new ArrayList<>(parts.length);
+        int depth = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            Line line;
+            if (part.isBlank()) {
+                line = blank();
+            } else if (BULLET.matcher(part).matches() || ORDERED.matcher(part).matches()) {
+                line = listItem(part);
+                if (line == null) {
+                    return null;
+                }
+                depth = line.depth;
+            } else if (i > 0 && CONTINUATION.matcher(part).matches() && part.indexOf('\t') < 0) {
+                String text = part.trim();
+                if (!inlineSafe(text)) {
+                    return null;
+                }
+                line = new Line(Kind.TEXT, depth + 1, 0, null, false, text, inline(text, base(0)));
+            } else {
+                return null;
+            }
+            lines.add(line);
+        }
+        return new StyledRow(lines);
+    }
+
+    private static Line parseLine(String raw) {
+        if (raw.isBlank()) {
+            return blank();
+        }
+        if (raw.charAt(0) == '\t' || raw.startsWith("    ") || startsComplexBlock(raw.stripLeading())
+                || REFERENCE.matcher(raw).find()) {
+            return null;
+        }
+        Matcher m = HEADING.matcher(raw);
+        if (m.matches()) {
+            int level = m.group(1).length();
+            String text = m.group(2) == null ? "" : m.group(2);
+            return inlineSafe(text) ? new Line(Kind.HEADING, 0, level, null, false, text, inline(text, base(level))) : null;
+        }
+        if (RULE.matcher(raw).matches()) {
+            return new Line(Kind.RULE, 0, 0, null, false, "", null);
+        }
+        if (BULLET.matcher(raw).matches() || ORDERED.matcher(raw).matches()) {
+            return listItem(raw);
+        }
+        String text = raw.strip();
+        return inlineSafe(text) ? new Line(Kind.TEXT, 0, 0, null, false, text, inline(text, base(0))) : null;
+    }
+
+    /** A bullet, task or numbered item; null if its content is itself a block. */
+    private static Line listItem(String raw) {
+        if (RULE.matcher(raw).matches()) {
+            return null;
+        }
+        Kind kind;
+        int depth;
+        String marker = null;
+        boolean checked = false;
+        String text;
+        Matcher m = BULLET.matcher(raw);
+        if (m.matches()) {
+            kind = Kind.BULLET;
+            depth = m.group(1).length() / 2;
+            text = m.group(3) == null ? "" : m.group(3);
+            Matcher task = TASK.matcher(text);
+            if (task.matches()) {
+                kind = Kind.TASK;
+                checked = task.group(1).charAt(0) != ' ';
+                text = task.group(2) == null ? "" : task.group(2);
+            }
+        } else {
+            m = ORDERED.matcher(raw);
+            if (!m.matches()) {
+                return null;
+            }
+            kind = Kind.ORDERED;
+            depth = m.group(1).length() / 3;
+            marker = m.group(2) + ".";
+            text = m.group(4) == null ? "" : m.group(4);
+        }
+        if (startsComplexBlock(text) || text.startsWith("#") || !inlineSafe(text)) {
+            return null;
+        }
+        text = text.strip();
+        return new Line(kind, depth, 0, marker, checked, text, inline(text, base(0)));
+    }
+
+    private static boolean startsComplexBlock(String text) {
+        return text.startsWith(">") || text.startsWith("|") || text.startsWith("```") || text.startsWith("~~~");
+    }
+
+    private static Line blank() {
+        return new Line(Kind.BLANK, 0, 0, null, false, "", null);
+    }
+
+    // Raw HTML, entities and images are left to flexmark
+    private static boolean inlineSafe(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+            if (c == '<' && (Character.isLetter(next) || next == '/' || next == '!' || next == '?')) {
+                return false;
+            }
+            if (c == '&' && (Character.isLetterOrDigit(next) || next == '#')) {
+                return false;
+            }
+            if (c == '!' && next == '[') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Base attributes of a line: body text, or heading level 1-6. */
+    private static Map<TextAttribute, Object> base(int headingLevel) {
+        Map<TextAttribute, Object> attributes = new LinkedHashMap<>();
+        attributes.put(TextAttribute.FAMILY, BODY_FONT);
+        if (headingLevel == 0) {
+            attributes.put(TextAttribute.SIZE, (float) BODY_SIZE);
+            attributes.put(TextAttribute.FOREGROUND, TEXT_COLOR);
+        } else {
+            attributes.put(TextAttribute.SIZE, (float) HEADING_SIZES[headingLevel - 1]);
+            attributes.put(TextAttribute.WEIGHT, TextAttribute.WEIGHT_SEMIBOLD);
+            attributes.put(TextAttribute.FOREGROUND, HEADING_COLOR);
+        }
+        return attributes;
+    }
+
+    /**
+     * Parses emphasis, code spans, strikethrough and links. An opening
+     * delimiter only counts if a matching closer follows; otherwise it stays
+     * literal text, as in CommonMark.
+     */
+    private static AttributedString inline(String source, Map<TextAttribute, Object> base) {
+        StringBuilder out = new StringBuilder(source.length());
+        List<int[]> spans = new ArrayList<>();
+        int flags = 0;
+        int runStart = 0;
+        int linkClose = -1;
+        int linkEnd = -1;
+
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            int before = flags;
+
+            if (c == '\\' && i + 1 < source.length() && isAsciiPunctuation(source.charAt(i + 1))) {
+                out.append(source.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            if (c == '`') {
+                int run = runLength(source, i, '`');
+                int close = findRun(source, i + run, '`', run);
+                if (close < 0) {
+                    out.append(source, i, i + run);
+                    i += run;
+                    continue;
+                }
+                String code = source.substring(i + run, close);
+                if (code.length() > 2 && code.startsWith(" ") && code.endsWith(" ") && !code.isBlank()) {
+                    code = code.substring(1, code.length() - 1);
+                }
+                runStart = emit(spans, runStart, out.length(), flags);
+                out.append(code);
+                runStart = emit(spans, runStart, out.length(), flags | CODE);
+                i = close + run;
+                continue;
+            }
+            if (c == '~' && source.startsWith("~~", i) && ((flags & STRIKE) != 0 || closes(source, i + 2, "~~"))) {
+                flags ^= STRIKE;
+                runStart = emit(spans, runStart, out.length(), before);
+                i += 2;
+                continue;
+            }
+            if ((c == '*' || c == '_') && !(c == '_' && isIntraword(source, i))) {
+                String pair = c == '*' ? "**" : "__";
+                if (source.startsWith(pair, i) && ((flags & BOLD) != 0 || closes(source, i + 2, pair))) {
+                    flags ^= BOLD;
+                    runStart = emit(spans, runStart, out.length(), before);
+                    i += 2;
+                    continue;
+                }
+                if ((flags & ITALIC) != 0 || closes(source, i + 1, String.valueOf(c))) {
+                    flags ^= ITALIC;
+                    runStart = emit(spans, runStart, out.length(), before);
+                    i += 1;
+                    continue;
+                }
+            }
+            if (c == '[' && (flags & LINK) == 0) {
+                int close = source.indexOf("](", i + 1);
+                int end = close < 0 ? -1 : source.indexOf(')', close + 2);
+                if (close > i && end > close && source.substring(close + 2, end).indexOf(' ') < 0) {
+                    runStart = emit(spans, runStart, out.length(), flags);
+                    flags |= LINK;
+                    linkClose = close;
+                    linkEnd = end;
+                    i++;
+                    continue;
+                }
+            }
+            if (i == linkClose) {
+                runStart = emit(spans, runStart, out.length(), flags);
+                flags &= ~LINK;
+                linkClose = -1;
+                i = linkEnd + 1;
+                continue;
+            }
+            if ((flags & LINK) == 0 && (c == 'h' || c == 'w') && isAutolink(source, i)) {
+                // Bare URLs are copied as one link run; emphasis chars inside them stay literal
+                int end = autolinkEnd(source, i);
+                runStart = emit(spans, runStart, out.length(), flags);
+                out.append(source, i, end);
+                runStart = emit(spans, runStart, out.length(), flags | LINK);
+                i = end;
+                continue;
+            }
+            out.append(c);
+            i++;
+        }
+        emit(spans, runStart, out.length(), flags);
+        return styled(out.toString(), spans, base);
+    }
+
+    private static boolean isAutolink(String source, int i) {
+        return (i == 0 || !Character.isLetterOrDigit(source.charAt(i - 1)))
+                && (source.startsWith("http://", i) || source.startsWith("https://", i) || source.startsWith("www.", i));
+    }
+
+    private static int autolinkEnd(String source, int from) {
+        int end = from;
+        while (end < source.length() && !Character.isWhitespace(source.charAt(end)) && source.charAt(end) != '<') {
+            end++;
+        }
+        while (end > from + 1 && ".,;:!?)*_~'\"".indexOf(source.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return end;
+    }
+
+    // snake_case underscores are text, not emphasis
+    private static boolean isIntraword(String source, int i) {
+        int end = i + runLength(source, i, '_');
+        return i > 0 && Character.isLetterOrDigit(source.charAt(i - 1))
+                && end < source.length() && Character.isLetterOrDigit(source.charAt(end));
+    }
+
+    // Records [start, end) as having the given flags; returns the start of the next run
+    private static int emit(List<int[]> spans, int start, int end, int flags) {
+        if (end > start && flags != 0) {
+            spans.add(new int[] { start, end, flags });
+        }
+        return end;
+    }
+
+    private static boolean closes(String source, int from, String delimiter) {
+        int at = source.indexOf(delimiter, from);
+        // An empty pair such as "**" or a delimiter followed by a space does not open
+        return at > from && !Character.isWhitespace(source.charAt(from));
+    }
+
+    private static int runLength(String source, int from, char c) {
+        int end = from;
+        while (end < source.length() && source.charAt(end) == c) {
+            end++;
+        }
+        return end - from;
+    }
+
+    private static int findRun(String source, int from, char c, int length) {
+        int i = from;
+        while (i < source.length()) {
+            if (source.charAt(i) == c) {
+                int run = runLength(source, i, c);
+                if (run == length) {
+                    return i;
+                }
+                i += run;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiPunctuation(char c) {
+        return c < 128 && "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~".indexOf(c) >= 0;
+    }
+
+    private static AttributedString styled(String text, List<int[]> spans, Map<TextAttribute, Object> base) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        AttributedString styled = new AttributedString(text, base);
+        if (spans == null) {
+            return styled;
+        }
+        for (int[] span : spans) {
+            int start = span[0];
+            int end = span[1];
+            int flags = span[2];
+            if ((flags & CODE) != 0) {
+                styled.addAttribute(TextAttribute.FAMILY, CODE_FONT, start, end);
+                styled.addAttribute(TextAttribute.SIZE, (float) CODE_SIZE, start, end);
+                styled.addAttribute(TextAttribute.BACKGROUND, CODE_BACKGROUND, start, end);
+                styled.addAttribute(TextAttribute.FOREGROUND, CODE_COLOR, start, end);
+            }
+            if ((flags & BOLD) != 0) {
+                styled.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD, start, end);
+                styled.addAttribute(TextAttribute.FOREGROUND, STRONG_COLOR, start, end);
+            }
+            if ((flags & ITALIC) != 0) {
+                styled.addAttribute(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE, start, end);
+                styled.addAttribute(TextAttribute.FOREGROUND, EM_COLOR, start, end);
+            }
+            if ((flags & STRIKE) != 0) {
+                styled.addAttribute(TextAttribute.STRIKETHROUGH, TextAttribute.STRIKETHROUGH_ON, start, end);
+                styled.addAttribute(TextAttribute.FOREGROUND, DEL_COLOR, start, end);
+            }
+            if ((flags & LINK) != 0) {
+                styled.addAttribute(TextAttribute.FOREGROUND, LINK_COLOR, start, end);
+            }
+        }
+        return styled;
+    }
+}
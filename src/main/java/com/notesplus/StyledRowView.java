@@ -0,0 +1,204 @@
+package com.notesplus;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextLayout;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+
+/**
+ * Paints a {@link StyledRow} with wrapped {@link TextLayout}s instead of an
+ * HTML view tree. The layouts are built once per width and reused for every
+ * repaint, so scrolling only draws glyphs. A row costs its text layouts and a
+ * few boxes, a small fraction of a JEditorPane with its HTMLDocument.
+ */
+final class StyledRowView extends JComponent {
+
+    private static final Insets PADDING = new Insets(3, 6, 3, 6);
+    private static final int LIST_INDENT = 24;
+    private static final int LINE_GAP = 4;
+    private static final int HEADING_MARGIN = 4;
+    private static final int RULE_MARGIN = 8;
+    private static final int MIN_WRAP_WIDTH = 40;
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+    private static final Font BODY = new Font(StyledRow.BODY_FONT, Font.PLAIN, StyledRow.BODY_SIZE);
+    private static final LineMetrics BODY_METRICS = BODY.getLineMetrics("Xg", FRC);
+    private static final float BODY_LINE = BODY_METRICS.getAscent() + BODY_METRICS.getDescent()
+            + BODY_METRICS.getLeading() + LINE_GAP;
+
+    // One laid-out piece of a line, or a marker/rule position when layout is null
+    private static final class Placed {
+        final StyledRow.Line line;
+        final TextLayout layout;
+        final float x;
+        final float baseline;
+
+        Placed(StyledRow.Line line, TextLayout layout, float x, float baseline) {
+            this.line = line;
+            this.layout = layout;
+            this.x = x;
+            this.baseline = baseline;
+        }
+    }
+
+    private StyledRow row;
+    private final List<Placed> placed = new ArrayList<>();
+    private int layoutWidth = -1;
+    private int layoutHeight = 0;
+
+    StyledRowView() {
+        setOpaque(true);
+    }
+
+    void setRow(StyledRow row) {
+        this.row = row;
+        layoutWidth = -1;
+        placed.clear();
+        repaint();
+    }
+
+    /** Height needed to show the row at the given width; lays it out if the width changed. */
+    int preferredHeight(int width) {
+        layout(width);
+        return layoutHeight;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int width = getWidth() > 0 ? getWidth() : 400;
+        return new Dimension(width, preferredHeight(width));
+    }
+
+    private void layout(int width) {
+        if (width == layoutWidth || row == null) {
+            return;
+        }
+        placed.clear();
+        float y = PADDING.top;
+        for (StyledRow.Line line : row.lines) {
+            switch (line.kind) {
+                case BLANK -> y += BODY_LINE;
+                case RULE -> {
+                    placed.add(new Placed(line, null, PADDING.left, y + RULE_MARGIN));
+                    y += RULE_MARGIN * 2 + 1;
+                }
+                default -> y = layoutLine(line, width, y);
+            }
+        }
+        layoutWidth = width;
+        layoutHeight = (int) Math.ceil(y + PADDING.bottom);
+    }
+
+    private float layoutLine(StyledRow.Line line, int width, float y) {
+        boolean heading = line.kind == StyledRow.Kind.HEADING;
+        boolean item = line.kind == StyledRow.Kind.BULLET || line.kind == StyledRow.Kind.ORDERED
+                || line.kind == StyledRow.Kind.TASK;
+        float x = PADDING.left + LIST_INDENT * (item ? line.depth + 1 : line.depth);
+        if (heading) {
+            y += HEADING_MARGIN;
+        }
+        if (line.styled == null) {
+            placed.add(new Placed(line, null, x, y + BODY_METRICS.getAscent()));
+            y += BODY_LINE;
+        } else {
+            float wrapWidth = Math.max(MIN_WRAP_WIDTH, width - x - PADDING.right);
+            AttributedCharacterIterator text = line.styled.getIterator();
+            LineBreakMeasurer measurer = new LineBreakMeasurer(text, FRC);
+            while (measurer.getPosition() < text.getEndIndex()) {
+                TextLayout layout = measurer.nextLayout(wrapWidth);
+                float baseline = y + layout.getAscent();
+                placed.add(new Placed(line, layout, x, baseline));
+                y = baseline + layout.getDescent() + layout.getLeading() + (heading ? 0 : LINE_GAP);
+            }
+        }
+        if (heading) {
+            y += HEADING_MARGIN;
+        }
+        return y;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+        layout(getWidth());
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            StyledRow.Line markedLine = null;
+            for (Placed p : placed) {
+                if (p.line.kind == StyledRow.Kind.RULE) {
+                    g2.setColor(StyledRow.RULE_COLOR);
+                    g2.fillRect(PADDING.left, Math.round(p.baseline), getWidth() - PADDING.left - PADDING.right, 1);
+                    continue;
+                }
+                if (p.layout != null) {
+                    p.layout.draw(g2, p.x, p.baseline);
+                }
+                // Markers go beside the first wrapped piece only
+                if (p.line != markedLine) {
+                    markedLine = p.line;
+                    paintMarker(g2, p);
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private void paintMarker(Graphics2D g2, Placed p) {
+        int x = Math.round(p.x);
+        int baseline = Math.round(p.baseline);
+        g2.setColor(StyledRow.TEXT_COLOR);
+        switch (p.line.kind) {
+            case BULLET -> {
+                int cx = x - 14;
+                int cy = baseline - 8;
+                if (p.line.depth == 0) {
+                    g2.fillOval(cx, cy, 5, 5);
+                } else if (p.line.depth == 1) {
+                    g2.drawOval(cx, cy, 5, 5);
+                } else {
+                    g2.fillRect(cx, cy, 5, 5);
+                }
+            }
+            case ORDERED -> {
+                g2.setFont(BODY);
+                FontMetrics fm = g2.getFontMetrics();
+                g2.drawString(p.line.marker, x - 6 - fm.stringWidth(p.line.marker), baseline);
+            }
+            case TASK -> {
+                int bx = x - 19;
+                int by = baseline - 11;
+                g2.setColor(p.line.checked ? StyledRow.LINK_COLOR : StyledRow.DEL_COLOR);
+                if (p.line.checked) {
+                    g2.fillRoundRect(bx, by, 12, 12, 3, 3);
+                    g2.setColor(Color.WHITE);
+                    g2.setStroke(new BasicStroke(1.6f));
+                    g2.drawPolyline(new int[] { bx + 3, bx + 5, bx + 9 }, new int[] { by + 6, by + 9, by + 3 }, 3);
+                } else {
+                    g2.drawRoundRect(bx, by, 12, 12, 3, 3);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.notesplus;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo for one note's rows. Every document change is kept as a row
+ * replacement: where it happened, the rows it took out and the rows it put
+ * in. Rows are immutable strings shared with the document and with other
+ * entries, so an edit to one row of a huge note costs that row, not a copy
+ * of the note.
+ *
+ * Changes made while handling one input event form one step, so an Enter
+ * that splits a row or a paste is undone as a whole. Typing in one row is
+ * merged into a single step until it pauses. Memory is estimated from the
+ * rows held and capped; the oldest steps are dropped first. EDT only.
+ */
+final class UndoStack {
+
+    private static final long MAX_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_STEPS = 1000;
+    // Keystrokes in one row closer together than this are undone together
+    private static final long TYPING_PAUSE_MILLIS = 1000;
+
+    /** Rows {@code [index, index + inserted.size())} replaced {@code removed}. */
+    record Op(int index, List<String> removed, List<String> inserted) {
+
+        long estimatedBytes() {
+            return 48 + rowBytes(removed) + rowBytes(inserted);
+        }
+    }
+
+    private static final class Step {
+        final List<Op> ops = new ArrayList<>(2);
+        long bytes;
+        // The input event that made it, and when it last grew, to tell which changes belong to it
+        AWTEvent cause;
+        long lastChangeMillis;
+        boolean typing;
+    }
+
+    private final Deque<Step> undo = new ArrayDeque<>();
+    private final Deque<Step> redo = new ArrayDeque<>();
+    private long bytes = 0;
+    private boolean applying = false;
+    private boolean continuing = false;
+
+    /** Records a change made to the document; {@code document} is the document after it. */
+    void record(LineDocument.Change change, LineDocument document) {
+        if (applying) {
+            return;
+        }
+        Op op;
+        switch (change.type()) {
+            case UPDATE -> op = new Op(change.index(), change.removed(),
+                    Collections.singletonList(document.get(change.index())));
+            case INSERT -> {
+                List<String> inserted = new ArrayList<>(change.count());
+                for (int i = 0; i < change.count(); i++) {
+                    inserted.add(document.get(change.index() + i));
+                }
+                op = new Op(change.index(), Collections.emptyList(), inserted);
+            }
+            case REMOVE -> op = new Op(change.index(), change.removed(), Collections.emptyList());
+            default -> {
+                // A new note was loaded into the document; earlier steps no longer apply
+                clear();
+                return;
+            }
+        }
+        clearRedo();
+
+        long now = System.currentTimeMillis();
+        AWTEvent cause = EventQueue.isDispatchThread() ? EventQueue.getCurrentEvent() : null;
+        Step last = undo.peekLast();
+        boolean typing = change.type() == LineDocument.ChangeType.UPDATE;
+        if (last != null && last.typing && typing && last.ops.size() == 1
+                && last.ops.get(0).index() == op.index() && now - last.lastChangeMillis < TYPING_PAUSE_MILLIS) {
+            // Another keystroke in the same row: keep the text from before the first one
+            Op merged = new Op(op.index(), last.ops.get(0).removed(), op.inserted());
+            resize(last, merged.estimatedBytes() - last.ops.get(0).estimatedBytes());
+            last.ops.set(0, merged);
+            last.lastChangeMillis = now;
+            return;
+        }
+        Step step = last;
+        if (last == null || !(continuing || (cause != null && cause == last.cause))) {
+            step = new Step();
+            step.cause = cause;
+            step.typing = typing;
+            undo.addLast(step);
+        } else {
+            step.typing = false;
+        }
+        step.ops.add(op);
+        step.lastChangeMillis = now;
+        resize(step, op.estimatedBytes());
+        evict();
+    }
+
+    /**
+     * Runs {@code work} with its changes added to the latest step, for
+     * changes that follow from an earlier edit, like re-splitting the rows
+     * around it.
+     */
+    void continueStep(Runnable work) {
+        continuing = true;
+        try {
+            work.run();
+        } finally {
+            continuing = false;
+        }
+    }
+
+    /** Makes the next change start a step of its own, even if it comes from the same input event. */
+    void endStep() {
+        Step last = undo.peekLast();
+        if (last != null) {
+            last.cause = null;
+            last.typing = false;
+        }
+    }
+
+    /**
+     * Hands the latest step's inverse to {@code apply}, newest op first, as
+     * replacements (index, rows to remove, rows to insert). Returns the row
+     * where the step started, or -1 if there is nothing to undo.
+     */
+    int undo(RowReplacer apply) {
+        Step step = undo.pollLast();
+        if (step == null) {
+            return -1;
+        }
+        run(() -> {
+            for (int i = step.ops.size() - 1; i >= 0; i--) {
+                Op op = step.ops.get(i);
+                apply.replace(op.index(), op.inserted().size(), op.removed());
+            }
+        });
+        step.cause = null;
+        step.typing = false;
+        redo.addLast(step);
+        return step.ops.get(0).index();
+    }
+
+    /** Re-applies the step undone last; returns the row where it ends, or -1 if there is nothing to redo. */
+    int redo(RowReplacer apply) {
+        Step step = redo.pollLast();
+        if (step == null) {
+            return -1;
+        }
+        run(() -> {
+            for (Op op : step.ops) {
+                apply.replace(op.index(), op.removed().size(), op.inserted());
+            }
+        });
+        undo.addLast(step);
+        Op last = step.ops.get(step.ops.size() - 1);
+        return last.index() + Math.max(0, last.inserted().size() - 1);
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+    }
+
+    /** Estimated heap held by the steps, for cache accounting. */
+    long estimatedBytes() {
+        return bytes;
+    }
+
+    interface RowReplacer {
+        void replace(int index, int removeCount, List<String> rows);
+    }
+
+    private void run(Runnable work) {
+        applying = true;
+        try {
+            work.run();
+        } finally {
+            applying = false;
+        }
+    }
+
+    private void clearRedo() {
+        for (Step step : redo) {
+            bytes -= step.bytes;
+        }
+        redo.clear();
+    }
+
+    private void resize(Step step, long delta) {
+        step.bytes += delta;
+        bytes += delta;
+    }
+
+    // Keeps the newest step even if it alone is over the cap, so the last edit can always be undone
+    private void evict() {
+        while (undo.size() > 1 && (bytes > MAX_BYTES || undo.size() > MAX_STEPS)) {
+            bytes -= undo.pollFirst().bytes;
+        }
+    }
+
+    private static long rowBytes(List<String> rows) {
+        long total = 0;
+        for (String row : rows) {
+            total += 40 + 2L * row.length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,64 @@
+package com.notesplus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class QuickSwitchIndexTest {
+
+    private static final String LONG_NAME = "engagement_notes_example_long";
+
+    @Test
+    void weakMatchOnLongNameIsFound() {
+        QuickSwitchIndex index = new QuickSwitchIndex();
+        index.add(LONG_NAME);
+        index.add("recon");
+
+        index.query("x");
+
+        assertEquals(List.of(LONG_NAME), results(index));
+    }
+
+    @Test
+    void narrowingKeepsWeakMatches() {
+        QuickSwitchIndex index = new QuickSwitchIndex();
+        index.add(LONG_NAME);
+        index.add("xss_payloads");
+
+        index.query("x");
+        index.query("xa");
+        index.query("xam");
+        List<String> narrowed = results(index);
+
+        QuickSwitchIndex fresh = new QuickSwitchIndex();
+        fresh.add(LONG_NAME);
+        fresh.add("xss_payloads");
+        fresh.query("xam");
+
+        assertEquals(List.of(LONG_NAME), narrowed);
+        assertEquals(results(fresh), narrowed);
+    }
+
+    @Test
+    void narrowingDropsNamesThatStopMatching() {
+        QuickSwitchIndex index = new QuickSwitchIndex();
+        index.add("api_keys");
+        index.add("apache");
+
+        index.query("ap");
+        index.query("apk");
+
+        assertEquals(List.of("api_keys"), results(index));
+    }
+
+    private static List<String> results(QuickSwitchIndex index) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < index.resultCount(); i++) {
+            names.add(index.result(i));
+        }
+        return names;
+    }
+}